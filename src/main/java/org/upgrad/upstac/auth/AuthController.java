@@ -1,5 +1,7 @@
 package org.upgrad.upstac.auth;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,9 +16,12 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 import org.upgrad.upstac.auth.models.LoginRequest;
 import org.upgrad.upstac.auth.models.LoginResponse;
+import org.upgrad.upstac.config.security.TokenDenylist;
 import org.upgrad.upstac.config.security.TokenProvider;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.users.User;
 import org.upgrad.upstac.users.UserService;
+import org.upgrad.upstac.users.models.AccountStatus;
 
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
 
@@ -30,15 +35,18 @@ public class AuthController {
 
     private UserService userService;
 
+    private TokenDenylist tokenDenylist;
+
 
     private static final Logger log = LoggerFactory.getLogger(AuthController.class);
 
 
     @Autowired
-    public AuthController(AuthenticationManager authenticationManager, TokenProvider tokenProvider, UserService userService) {
+    public AuthController(AuthenticationManager authenticationManager, TokenProvider tokenProvider, UserService userService, TokenDenylist tokenDenylist) {
         this.authenticationManager = authenticationManager;
         this.tokenProvider = tokenProvider;
         this.userService = userService;
+        this.tokenDenylist = tokenDenylist;
     }
 
     @PostMapping("/auth/login")
@@ -54,14 +62,15 @@ public class AuthController {
             );
 
 
-            if(userService.isApprovedUser( loginRequest.getUserName()) == false){
+            User user = userService.findByUserName(loginRequest.getUserName());
+            if(user.getStatus() != AccountStatus.APPROVED){
                 throw new AppException("User Not Approved");
             }
 
 
 
             SecurityContextHolder.getContext().setAuthentication(authentication);
-            final String token = tokenProvider.generateToken(authentication);
+            final String token = tokenProvider.generateToken(authentication, user);
             LoginResponse result = new LoginResponse(loginRequest.getUserName(), "Success", token);
 
             return ResponseEntity.ok(result);
@@ -80,5 +89,18 @@ public class AuthController {
 
     }
 
+    @PostMapping("/auth/logout")
+    public ResponseEntity<?> logout(@RequestHeader("Authorization") String authorization) {
+
+        try {
+            String token = authorization.replace("Bearer ", "");
+            tokenDenylist.revokeToken(tokenProvider.getClaimFromToken(token, Claims::getId), tokenProvider.getUsernameFromToken(token), tokenProvider.getExpirationDateFromToken(token));
+            return ResponseEntity.ok("Successfully Logged Out");
+        } catch (JwtException | IllegalArgumentException e) {
+            throw asBadRequest("Invalid Token");
+        }
+
+    }
+
 
 }
@@ -0,0 +1,206 @@
+package org.upgrad.upstac.config.idempotency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Makes test request creation and the lab and consultation transitions safe to retry. A request carrying an
+ * Idempotency-Key header runs once; its successful response is stored and every retry with the same key gets that
+ * response back without reaching the controller. Reusing a key for a different method, path or body is a conflict.
+ * Failed requests are not stored, so the client can fix and retry them. Failing to store a response does not fail the
+ * request, which has already run; the client gets its response and only loses the replay on a retry.
+ * Runs after the security filter chain, keys are scoped to the authenticated user.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 128;
+
+    private static final String[][] COVERED = {
+            {"POST", "/api/testrequests"},
+            {"PUT", "/api/labrequests/**"},
+            {"PUT", "/api/consultations/**"}
+    };
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (request.getHeader(IDEMPOTENCY_KEY_HEADER) == null)
+            return true;
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String[] covered : COVERED) {
+            if (covered[0].equals(request.getMethod()) && pathMatcher.match(covered[1], path))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, IDEMPOTENCY_KEY_HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        // the body is read up front to fingerprint it, the controller then reads the buffered copy
+        BufferedBodyRequest bufferedRequest = new BufferedBodyRequest(request);
+        String key = authentication.getName() + ":" + idempotencyKey;
+        String fingerprint = request.getMethod() + " " + request.getRequestURI() + " " + bufferedRequest.getBodyHash();
+
+        IdempotencyRecord record = idempotencyStore.find(key);
+        if (record != null) {
+            if (record.getFingerprint().equals(fingerprint))
+                replay(record, response);
+            else
+                response.sendError(HttpServletResponse.SC_CONFLICT, IDEMPOTENCY_KEY_HEADER + " was already used for another request");
+            return;
+        }
+
+        if (idempotencyStore.begin(key) == false) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "A request with this " + IDEMPOTENCY_KEY_HEADER + " is still in progress");
+            return;
+        }
+
+        try {
+            ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+            chain.doFilter(bufferedRequest, responseWrapper);
+
+            if (responseWrapper.getStatus() >= 200 && responseWrapper.getStatus() < 300) {
+                try {
+                    idempotencyStore.save(toRecord(key, fingerprint, responseWrapper));
+                } catch (RuntimeException e) {
+                    log.error("could not store the response for " + IDEMPOTENCY_KEY_HEADER + " " + key, e);
+                }
+            }
+            responseWrapper.copyBodyToResponse();
+        } finally {
+            idempotencyStore.end(key);
+        }
+    }
+
+    private static class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+
+        String getBodyHash() {
+            try {
+                return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            Charset charset = getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(getCharacterEncoding());
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+
+    private IdempotencyRecord toRecord(String key, String fingerprint, ContentCachingResponseWrapper response) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setIdempotencyKey(key);
+        record.setFingerprint(fingerprint);
+        record.setStatus(response.getStatus());
+        record.setContentType(response.getContentType());
+        record.setETag(response.getHeader(HttpHeaders.ETAG));
+        record.setBody(response.getContentAsByteArray());
+        record.setCreatedAt(Instant.now());
+        return record;
+    }
+
+    private void replay(IdempotencyRecord record, HttpServletResponse response) throws IOException {
+        response.setStatus(record.getStatus());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (record.getContentType() != null)
+            response.setContentType(record.getContentType());
+        if (record.getETag() != null)
+            response.setHeader(HttpHeaders.ETAG, record.getETag());
+        if (record.getBody() != null) {
+            response.setContentLength(record.getBody().length);
+            response.getOutputStream().write(record.getBody());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.upgrad.upstac.config.idempotency;
+
+import lombok.Data;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * The response of a successful request made with an Idempotency-Key, replayed as-is when the same user sends the key
+ * again. The key is stored prefixed with the user name so two users can never see each other's responses.
+ */
+@Data
+@Entity
+@Table(indexes = @Index(name = "idx_idempotency_record_created_at", columnList = "createdAt"))
+public class IdempotencyRecord {
+
+    @Id
+    private String idempotencyKey;
+
+    // method, path and body hash of the original request, the key may not be reused for anything else
+    @Column(nullable = false)
+    private String fingerprint;
+
+    private int status;
+
+    private String contentType;
+
+    private String eTag;
+
+    @Lob
+    @Column(columnDefinition = "mediumblob")
+    @ToString.Exclude
+    private byte[] body;
+
+    @Column(nullable = false, columnDefinition = "datetime(3)")
+    private Instant createdAt;
+
+}
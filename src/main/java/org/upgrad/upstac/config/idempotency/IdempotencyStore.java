@@ -0,0 +1,127 @@
+package org.upgrad.upstac.config.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stored responses of idempotent requests. Recent ones are answered from a bounded in-memory cache, the rest from
+ * idempotency_record so a retry that lands after a restart or on another instance is still a replay. Records are kept
+ * for the configured number of hours, expired ones are deleted hourly.
+ */
+@Component
+public class IdempotencyStore {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Duration timeToLive;
+
+    private final Cache<String, IdempotencyRecord> recent;
+
+    // keys whose first request is still running, a retry arriving meanwhile is turned away instead of running twice
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency-purger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+
+    public IdempotencyStore(@Value("${app.idempotency.maximum-size:10000}") long maximumSize,
+                            @Value("${app.idempotency.time-to-live-hours:24}") long timeToLiveHours) {
+
+        timeToLive = Duration.ofHours(timeToLiveHours);
+        recent = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveHours, TimeUnit.HOURS)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        purger.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.HOURS);
+    }
+
+
+    public IdempotencyRecord find(String key) {
+        IdempotencyRecord cached = recent.getIfPresent(key);
+        if (cached != null)
+            return cached;
+
+        List<IdempotencyRecord> stored = jdbcTemplate.query("select fingerprint, status, content_type, e_tag, body, created_at from idempotency_record"
+                + " where idempotency_key = ? and created_at > ?", (resultSet, rowNumber) -> {
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setIdempotencyKey(key);
+            record.setFingerprint(resultSet.getString(1));
+            record.setStatus(resultSet.getInt(2));
+            record.setContentType(resultSet.getString(3));
+            record.setETag(resultSet.getString(4));
+            record.setBody(resultSet.getBytes(5));
+            record.setCreatedAt(resultSet.getTimestamp(6).toInstant());
+            return record;
+        }, key, Timestamp.from(Instant.now().minus(timeToLive)));
+
+        if (stored.isEmpty())
+            return null;
+
+        recent.put(key, stored.get(0));
+        return stored.get(0);
+    }
+
+    public void save(IdempotencyRecord record) {
+        recent.put(record.getIdempotencyKey(), record);
+        try {
+            jdbcTemplate.update("insert into idempotency_record (idempotency_key, fingerprint, status, content_type, e_tag, body, created_at) values (?, ?, ?, ?, ?, ?, ?)",
+                    record.getIdempotencyKey(), record.getFingerprint(), record.getStatus(), record.getContentType(), record.getETag(), record.getBody(), Timestamp.from(record.getCreatedAt()));
+        } catch (DuplicateKeyException e) {
+            // an expired record not purged yet, the response just produced replaces it
+            jdbcTemplate.update("update idempotency_record set fingerprint = ?, status = ?, content_type = ?, e_tag = ?, body = ?, created_at = ? where idempotency_key = ?",
+                    record.getFingerprint(), record.getStatus(), record.getContentType(), record.getETag(), record.getBody(), Timestamp.from(record.getCreatedAt()), record.getIdempotencyKey());
+        }
+    }
+
+    public boolean begin(String key) {
+        return inProgress.add(key);
+    }
+
+    public void end(String key) {
+        inProgress.remove(key);
+    }
+
+    public void purgeExpired() {
+        try {
+            int deleted = jdbcTemplate.update("delete from idempotency_record where created_at <= ?", Timestamp.from(Instant.now().minus(timeToLive)));
+            if (deleted > 0)
+                log.info("purged " + deleted + " expired idempotency records");
+        } catch (RuntimeException e) {
+            log.error("could not purge idempotency records", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        purger.shutdownNow();
+    }
+}
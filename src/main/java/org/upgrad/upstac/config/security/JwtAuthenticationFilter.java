@@ -1,8 +1,11 @@
 package org.upgrad.upstac.config.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -31,10 +34,26 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private TokenProvider tokenProvider;
 
+    @Autowired
+    private TokenDenylist tokenDenylist;
+
+    @Autowired
+    private UserLoggedInService userLoggedInService;
+
+    @Value("${app.security.stateless-jwt:false}")
+    private boolean statelessJwt;
+
     @Override
     protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain) throws IOException, ServletException {
         String header = req.getHeader(HEADER_STRING);
 
+        if (statelessJwt && isTokenAttributeSetIn(header) && SecurityContextHolder.getContext().getAuthentication() == null) {
+            if (setSecurityContextAuthenticationFromClaimsIn(req, getAuthTokenFromHeader(header))) {
+                chain.doFilter(req, res);
+                return;
+            }
+        }
+
         String username = null;
         String authToken = null;
 
@@ -70,11 +89,50 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
         tokenProvider.validateToken(authToken, userDetails);
+        if (isRevoked(authToken))
+            throw new ServletException("Token Revoked");
+
         UsernamePasswordAuthenticationToken authentication = tokenProvider.getAuthentication(authToken, SecurityContextHolder.getContext().getAuthentication(), userDetails);
         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
         logger.info("authenticated user " + username + ", setting security context");
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
+        if (userDetails instanceof UpgradUserDetails)
+            userLoggedInService.setLoggedInUser(req, ((UpgradUserDetails) userDetails).getUser());
+
+    }
+
+    /**
+     * Parses and verifies the token once and builds the principal from its claims, no user lookup involved.
+     * Returns false for tokens issued without the required claims so that they go through the regular path.
+     */
+    boolean setSecurityContextAuthenticationFromClaimsIn(HttpServletRequest req, String authToken) throws ServletException {
+        Claims claims;
+        try {
+            claims = tokenProvider.getAllClaimsFromToken(authToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new ServletException("Invalid Token", e);
+        }
+
+        UsernamePasswordAuthenticationToken authentication = tokenProvider.getAuthentication(claims);
+        if (authentication == null)
+            return false;
+
+        if (tokenDenylist.isRevoked(claims.getId(), claims.getSubject(), claims.getIssuedAt()))
+            throw new ServletException("Token Revoked");
+
+        JwtUserPrincipal principal = (JwtUserPrincipal) authentication.getPrincipal();
+        if (principal.isEnabled() == false)
+            throw new ServletException("User Not Approved");
+
+        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        return true;
+    }
+
+    private boolean isRevoked(String authToken) {
+        Claims claims = tokenProvider.getAllClaimsFromToken(authToken);
+        return tokenDenylist.isRevoked(claims.getId(), claims.getSubject(), claims.getIssuedAt());
     }
 
     boolean isSecurityContextAuthenticationNotPresent(String username) {
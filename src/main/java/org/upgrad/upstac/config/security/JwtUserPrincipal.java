@@ -0,0 +1,57 @@
+package org.upgrad.upstac.config.security;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.upgrad.upstac.users.models.AccountStatus;
+
+import java.util.Collection;
+
+/**
+ * Principal built from the claims of a signed token, used when stateless authentication is enabled
+ */
+@Getter
+@ToString
+public class JwtUserPrincipal implements UserDetails {
+
+    private final Long userId;
+
+    private final String username;
+
+    private final AccountStatus status;
+
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    public JwtUserPrincipal(Long userId, String username, AccountStatus status, Collection<? extends GrantedAuthority> authorities) {
+        this.userId = userId;
+        this.username = username;
+        this.status = status;
+        this.authorities = authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return "";
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return status != AccountStatus.DELETED && status != AccountStatus.REJECTED;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return status == AccountStatus.APPROVED;
+    }
+}
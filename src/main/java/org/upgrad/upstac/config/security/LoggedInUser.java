@@ -0,0 +1,28 @@
+package org.upgrad.upstac.config.security;
+
+import lombok.Getter;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.roles.UserRole;
+
+/**
+ * The user resolved for the current request along with its role bitmask, kept as a request attribute
+ * so that the user is looked up at most once per request
+ */
+@Getter
+public class LoggedInUser {
+
+    static final String REQUEST_ATTRIBUTE = LoggedInUser.class.getName();
+
+    private final User user;
+
+    private final int roleMask;
+
+    public LoggedInUser(User user) {
+        this.user = user;
+        this.roleMask = user.getRoleMask();
+    }
+
+    public boolean hasRole(UserRole userRole) {
+        return (roleMask & userRole.getMask()) != 0;
+    }
+}
@@ -0,0 +1,73 @@
+package org.upgrad.upstac.config.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small in-memory denylist for signed tokens. Entries are dropped only once the token they cover would have expired
+ * anyway, so the list only ever holds revocations younger than the token validity.
+ */
+@Component
+public class TokenDenylist {
+
+    static final int MAX_ENTRIES = 10000;
+
+    // token id -> token expiry (millis)
+    private final Map<String, Long> revokedTokens = new LinkedHashMap<>();
+
+    // user name -> tokens issued before this instant (millis) are revoked
+    private final Map<String, Long> revokedUsers = new LinkedHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(TokenDenylist.class);
+
+
+    /**
+     * Revokes one token. Revocations are never evicted before they expire; when the list is full of live ones, every
+     * token of the user is revoked instead, which costs one entry per user however often they log out
+     */
+    public synchronized void revokeToken(String tokenId, String userName, Date expiration) {
+        if (tokenId == null || expiration == null)
+            return;
+
+        if (revokedTokens.size() >= MAX_ENTRIES)
+            purgeExpired();
+
+        if (revokedTokens.size() >= MAX_ENTRIES && userName != null) {
+            log.warn("token denylist full, revoking all tokens of " + userName + " instead");
+            revokeAllTokensOf(userName);
+            return;
+        }
+        revokedTokens.put(tokenId, expiration.getTime());
+    }
+
+    public synchronized void revokeAllTokensOf(String userName) {
+        if (userName == null)
+            return;
+
+        // Keyed by user name, so this is bounded by the number of users and nothing has to be evicted
+        if (revokedUsers.size() >= MAX_ENTRIES)
+            purgeExpired();
+
+        revokedUsers.remove(userName);
+        revokedUsers.put(userName, System.currentTimeMillis());
+    }
+
+    public synchronized boolean isRevoked(String tokenId, String userName, Date issuedAt) {
+        if (tokenId != null && revokedTokens.containsKey(tokenId))
+            return true;
+
+        Long revokedBefore = revokedUsers.get(userName);
+        return revokedBefore != null && (issuedAt == null || issuedAt.getTime() <= revokedBefore);
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiry -> expiry < now);
+        revokedUsers.values().removeIf(revokedAt -> revokedAt + TokenProvider.JWT_TOKEN_VALIDITY * 1000 < now);
+    }
+}
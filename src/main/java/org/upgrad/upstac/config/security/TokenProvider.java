@@ -10,12 +10,15 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.models.AccountStatus;
 
 import javax.servlet.ServletException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -30,6 +33,8 @@ public class TokenProvider implements Serializable {
 
 
     static final String AUTHORITIES_KEY = "scopes";
+    static final String USER_ID_KEY = "uid";
+    static final String ACCOUNT_STATUS_KEY = "status";
 
     public String getUsernameFromToken(String token) {
         return getClaimFromToken(token, Claims::getSubject);
@@ -44,7 +49,7 @@ public class TokenProvider implements Serializable {
         return claimsResolver.apply(claims);
     }
 
-    private Claims getAllClaimsFromToken(String token) {
+    Claims getAllClaimsFromToken(String token) {
         return Jwts.parser()
                 .setSigningKey(secretKey)
                 .parseClaimsJws(token)
@@ -57,18 +62,32 @@ public class TokenProvider implements Serializable {
     }
 
     public String generateToken(Authentication authentication) {
+        return getTokenBuilderFor(authentication).compact();
+    }
+
+    /**
+     * Also embeds the user id and account status so the filter can build the principal from claims alone
+     */
+    public String generateToken(Authentication authentication, User user) {
+        return getTokenBuilderFor(authentication)
+                .claim(USER_ID_KEY, user.getId())
+                .claim(ACCOUNT_STATUS_KEY, user.getStatus().name())
+                .compact();
+    }
+
+    private JwtBuilder getTokenBuilderFor(Authentication authentication) {
         final String authorities = authentication.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.joining(","));
 
         log.info("authorities",authorities);
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(authentication.getName())
                 .claim(AUTHORITIES_KEY, authorities)
                 .signWith(SignatureAlgorithm.HS256, secretKey)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY*1000))
-                .compact();
+                .setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY*1000));
     }
 
     public void validateToken(String token, UserDetails userDetails) throws ServletException {
@@ -92,12 +111,33 @@ public class TokenProvider implements Serializable {
 
 
         log.info("claims" + claims.get(AUTHORITIES_KEY).toString());
-        final Collection<? extends GrantedAuthority> authorities =
-                Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-                        .map(SimpleGrantedAuthority::new)
-                        .collect(Collectors.toList());
+        return new UsernamePasswordAuthenticationToken(userDetails, "", getAuthoritiesFrom(claims));
+    }
+
+    /**
+     * Builds the authentication purely from already verified claims, without loading the user.
+     * Returns null when the token was issued without the user id / status claims.
+     */
+    UsernamePasswordAuthenticationToken getAuthentication(final Claims claims) {
+
+        if (claims.get(USER_ID_KEY) == null || claims.get(ACCOUNT_STATUS_KEY) == null)
+            return null;
+
+        Collection<? extends GrantedAuthority> authorities = getAuthoritiesFrom(claims);
+        JwtUserPrincipal principal = new JwtUserPrincipal(
+                ((Number) claims.get(USER_ID_KEY)).longValue(),
+                claims.getSubject(),
+                AccountStatus.valueOf(claims.get(ACCOUNT_STATUS_KEY).toString()),
+                authorities);
+
+        return new UsernamePasswordAuthenticationToken(principal, "", authorities);
+    }
 
-        return new UsernamePasswordAuthenticationToken(userDetails, "", authorities);
+    private Collection<? extends GrantedAuthority> getAuthoritiesFrom(Claims claims) {
+        return Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
+                .filter(authority -> !authority.isEmpty())
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
     }
 
     private static final Logger log = LoggerFactory.getLogger(TokenProvider.class);
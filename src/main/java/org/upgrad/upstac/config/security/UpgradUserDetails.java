@@ -0,0 +1,21 @@
+package org.upgrad.upstac.config.security;
+
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.upgrad.upstac.users.User;
+
+import java.util.Collection;
+
+/**
+ * Spring security user that keeps hold of the loaded domain user, so it does not have to be fetched again
+ */
+@Getter
+public class UpgradUserDetails extends org.springframework.security.core.userdetails.User {
+
+    private final transient User user;
+
+    public UpgradUserDetails(User user, Collection<? extends GrantedAuthority> authorities) {
+        super(user.getUserName(), user.getPassword(), authorities);
+        this.user = user;
+    }
+}
@@ -37,7 +37,7 @@ public class UpgradUserDetailsService implements UserDetailsService {
 			throw new UsernameNotFoundException("Invalid username or password.");
 		}
 		log.info("loadUserByUsername " + user.toString());
-		return new org.springframework.security.core.userdetails.User(user.getUserName(), user.getPassword(), getAuthority(user));
+		return new UpgradUserDetails(user, getAuthority(user));
 	}
 
 	private Set<SimpleGrantedAuthority> getAuthority(User user) {
@@ -6,9 +6,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.upgrad.upstac.users.User;
 import org.upgrad.upstac.users.UserService;
 
+import javax.servlet.http.HttpServletRequest;
+
 
 @Component
 public class UserLoggedInService {
@@ -22,9 +26,32 @@ public class UserLoggedInService {
 
 
     public User getLoggedInUser() {
-            UserDetails principal = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            return userService.findByUserName(principal.getUsername());
+        return getLoggedInPrincipal().getUser();
+    }
+
+    /**
+     * Returns the user of the current request, resolving it only if the authentication filter did not already
+     */
+    public LoggedInUser getLoggedInPrincipal() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+
+        if (null != requestAttributes) {
+            LoggedInUser loggedInUser = (LoggedInUser) requestAttributes.getAttribute(LoggedInUser.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (null != loggedInUser)
+                return loggedInUser;
+        }
+
+        UserDetails principal = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        LoggedInUser loggedInUser = new LoggedInUser(userService.findByUserName(principal.getUsername()));
+
+        if (null != requestAttributes)
+            requestAttributes.setAttribute(LoggedInUser.REQUEST_ATTRIBUTE, loggedInUser, RequestAttributes.SCOPE_REQUEST);
+
+        return loggedInUser;
+    }
 
+    void setLoggedInUser(HttpServletRequest req, User user) {
+        req.setAttribute(LoggedInUser.REQUEST_ATTRIBUTE, new LoggedInUser(user));
     }
 
 
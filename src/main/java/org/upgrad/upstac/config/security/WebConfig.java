@@ -13,7 +13,7 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedMethods("*")
                 .allowedOrigins("*")
                 .allowedHeaders("*")
-                .exposedHeaders("Location", "Access-Control-Allow-Origin");
+                .exposedHeaders("Location", "Access-Control-Allow-Origin", "Idempotent-Replayed");
 
     }
 }
@@ -0,0 +1,11 @@
+package org.upgrad.upstac.exception;
+
+public class ConflictException extends RuntimeException {
+
+    public ConflictException(String message) {
+        super(message);
+    }
+
+
+
+}
@@ -0,0 +1,12 @@
+package org.upgrad.upstac.exception;
+
+// An open request with the same phone number or email exists; still an AppException so callers report it as before
+public class DuplicateRequestException extends AppException {
+
+    public DuplicateRequestException() {
+        super("A Request with same PhoneNumber or Email is already in progress ");
+    }
+
+
+
+}
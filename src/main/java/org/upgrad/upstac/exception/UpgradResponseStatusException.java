@@ -28,6 +28,9 @@ public class UpgradResponseStatusException extends ResponseStatusException {
     public static UpgradResponseStatusException asForbidden(String msg) {
         return asExceptionFromHttpStatus(msg, HttpStatus.FORBIDDEN);
     }
+    public static UpgradResponseStatusException asConflict(String msg) {
+        return asExceptionFromHttpStatus(msg, HttpStatus.CONFLICT);
+    }
     public static UpgradResponseStatusException asBadRequest(String msg) {
         return asExceptionFromHttpStatus(msg, HttpStatus.BAD_REQUEST);
     }
@@ -0,0 +1,29 @@
+package org.upgrad.upstac.shared;
+
+import org.upgrad.upstac.exception.AppException;
+
+public class ETags {
+
+
+    public static String fromVersion(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    // "*" matches any current version, so it yields no version to check against
+    public static Long toVersion(String eTag) {
+
+        try {
+            String value = eTag.trim();
+            if (value.equals("*"))
+                return null;
+            if (value.startsWith("W/"))
+                value = value.substring(2);
+            return Long.valueOf(value.replace("\"", ""));
+        } catch (Exception e) {
+            throw new AppException("Invalid If-Match header " + eTag);
+        }
+
+    }
+
+
+}
@@ -0,0 +1,22 @@
+package org.upgrad.upstac.testrequests;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+/**
+ * One row per email and per phone number of a request that is not COMPLETED yet. The primary key makes the database
+ * reject a second open request with the same details, the row is deleted when the request completes.
+ */
+@Data
+@Entity
+@Table(indexes = @Index(name = "idx_active_request_key_request_id", columnList = "requestId"))
+public class ActiveRequestKey {
+
+    @Id
+    private String activeKey;
+
+    @Column(nullable = false)
+    private Long requestId;
+
+}
@@ -0,0 +1,102 @@
+package org.upgrad.upstac.testrequests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.upgrad.upstac.exception.DuplicateRequestException;
+
+import java.util.*;
+
+@Service
+public class ActiveRequestKeyService {
+
+    static final String EMAIL_PREFIX = "email:";
+    static final String PHONE_PREFIX = "phone:";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.maintenance.active-request-key-back-fill:false}")
+    private boolean backFillEnabled;
+
+    private static Logger logger = LoggerFactory.getLogger(ActiveRequestKeyService.class);
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (backFillEnabled)
+            backFill();
+    }
+
+    /**
+     * Adds keys for open requests created before the table existed, the oldest open request wins a shared key; a one-off
+     * run once after the table is added, it scans every open request
+     */
+    public void backFill() {
+        int inserted = backFill(EMAIL_PREFIX, "email") + backFill(PHONE_PREFIX, "phone_number");
+        if (inserted > 0)
+            logger.info("back-filled " + inserted + " active request keys");
+    }
+
+    private int backFill(String prefix, String column) {
+        return jdbcTemplate.update("insert into active_request_key (active_key, request_id)"
+                + " select concat(?, t." + column + "), min(t.request_id) from test_request t"
+                + " where t.status <> ? and t." + column + " is not null"
+                + " and not exists (select 1 from active_request_key k where k.active_key = concat(?, t." + column + "))"
+                + " group by t." + column, prefix, RequestStatus.COMPLETED.ordinal(), prefix);
+    }
+
+    /**
+     * Must run in the transaction that inserts the request; a concurrent create with the same details waits on the key
+     * and fails once this one commits, so creates only serialize when they actually collide
+     */
+    public void claim(TestRequest testRequest) {
+        claimAll(Collections.singletonList(testRequest));
+    }
+
+    public void claimAll(List<TestRequest> testRequests) {
+        List<Object[]> keys = new ArrayList<>();
+        for (TestRequest testRequest : testRequests) {
+            for (String key : keysOf(testRequest.getEmail(), testRequest.getPhoneNumber()))
+                keys.add(new Object[]{key, testRequest.getRequestId()});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate("insert into active_request_key (active_key, request_id) values (?, ?)", keys);
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateRequestException();
+        }
+    }
+
+    /**
+     * The subset of the given keys already held by open requests, looked up with one IN query
+     */
+    public Set<String> findClaimed(Collection<String> keys) {
+        if (keys.isEmpty())
+            return Collections.emptySet();
+
+        String placeholders = String.join(",", Collections.nCopies(keys.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList("select active_key from active_request_key where active_key in (" + placeholders + ")",
+                String.class, keys.toArray()));
+    }
+
+    public static List<String> keysOf(String email, String phoneNumber) {
+        List<String> keys = new ArrayList<>(2);
+        if (email != null)
+            keys.add(EMAIL_PREFIX + email);
+        if (phoneNumber != null)
+            keys.add(PHONE_PREFIX + phoneNumber);
+        return keys;
+    }
+
+    public void release(TestRequest testRequest) {
+        jdbcTemplate.update("delete from active_request_key where request_id = ?", testRequest.getRequestId());
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.upgrad.upstac.testrequests;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkAssignmentResult {
+
+    private List<TestRequest> assigned;
+
+    // ids that were not in the expected state (already claimed, unknown ...)
+    private List<Long> skipped;
+
+    public BulkAssignmentResult() {
+
+    }
+
+    public BulkAssignmentResult(List<TestRequest> assigned, List<Long> skipped) {
+        this.assigned = assigned;
+        this.skipped = skipped;
+    }
+}
@@ -0,0 +1,24 @@
+package org.upgrad.upstac.testrequests;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkIngestReport {
+
+    private int created;
+
+    private int rejected;
+
+    private List<BulkIngestRow> rows = new ArrayList<>();
+
+    void add(BulkIngestRow row) {
+        if (row.getOutcome() == BulkIngestRow.Outcome.CREATED)
+            created++;
+        else
+            rejected++;
+        rows.add(row);
+    }
+}
@@ -0,0 +1,31 @@
+package org.upgrad.upstac.testrequests;
+
+import lombok.Data;
+
+@Data
+public class BulkIngestRow {
+
+    public enum Outcome {
+        CREATED, DUPLICATE, INVALID
+    }
+
+    // 1 based position of the record in the upload, header line not counted
+    private long row;
+
+    private Outcome outcome;
+
+    private Long requestId;
+
+    private String message;
+
+    public BulkIngestRow() {
+
+    }
+
+    public BulkIngestRow(long row, Outcome outcome, Long requestId, String message) {
+        this.row = row;
+        this.outcome = outcome;
+        this.requestId = requestId;
+        this.message = message;
+    }
+}
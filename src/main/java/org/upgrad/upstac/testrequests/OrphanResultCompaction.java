@@ -0,0 +1,54 @@
+package org.upgrad.upstac.testrequests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lab results and consultations used to be updated by inserting a new row with no request, leaving the assigned row
+ * empty. Those rows can never be joined back to a request; this deletes them in small batches so the tables are not
+ * locked for long. It is a one-off: enable it for a single startup of one instance once the fix is deployed, then
+ * switch it off again.
+ */
+@Component
+public class OrphanResultCompaction {
+
+    static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.maintenance.orphan-result-compaction:false}")
+    private boolean enabled;
+
+    private static Logger logger = LoggerFactory.getLogger(OrphanResultCompaction.class);
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled)
+            compact();
+    }
+
+    public void compact() {
+        int labResults = deleteOrphans("lab_result");
+        int consultations = deleteOrphans("consultation");
+        if (labResults + consultations > 0)
+            logger.info("deleted " + labResults + " orphaned lab results and " + consultations + " orphaned consultations");
+    }
+
+    int deleteOrphans(String table) {
+        int deleted = 0;
+        int batch;
+        do {
+            batch = jdbcTemplate.update("delete from " + table + " where request_request_id is null limit " + BATCH_SIZE);
+            deleted += batch;
+        } while (batch == BATCH_SIZE);
+        return deleted;
+    }
+}
@@ -11,6 +11,11 @@ import java.time.LocalDate;
 
 @Data
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_test_request_email_status", columnList = "email,status"),
+        @Index(name = "idx_test_request_phone_number_status", columnList = "phoneNumber,status"),
+        @Index(name = "idx_test_request_status_created", columnList = "status,created")
+})
 public class TestRequest {
 
 
@@ -18,6 +23,11 @@ public class TestRequest {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long requestId;
 
+    // defaulted in the column so that rows created before versioning (and by the JDBC batch inserts) start at 0
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+
     @ManyToOne
     private User createdBy;
 
@@ -5,13 +5,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import org.upgrad.upstac.config.security.UserLoggedInService;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.shared.ETags;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryEntry;
 import org.upgrad.upstac.users.User;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.List;
 
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
@@ -32,6 +39,9 @@ public class TestRequestController {
     @Autowired
     private TestRequestQueryService testRequestQueryService;
 
+    @Autowired
+    private TestRequestIngestService testRequestIngestService;
+
 
     @PostMapping("/api/testrequests")
     public TestRequest createRequest(@RequestBody CreateTestRequest testRequest) {
@@ -44,14 +54,67 @@ public class TestRequestController {
         }
 
     }
+    // The upload is read straight from the request body in batches, never buffered as a whole; uploads come from the
+    // authorities running camp drives, not from individual users
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    @PostMapping(value = "/api/testrequests/bulk", consumes = "text/csv")
+    public BulkIngestReport createRequestsFromCsv(HttpServletRequest request) throws IOException {
+        try {
+            User user = userLoggedInService.getLoggedInUser();
+            return testRequestIngestService.ingestCsv(user, request.getInputStream());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    @PostMapping(value = "/api/testrequests/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public BulkIngestReport createRequestsFromJson(HttpServletRequest request) throws IOException {
+        try {
+            User user = userLoggedInService.getLoggedInUser();
+            return testRequestIngestService.ingestJson(user, request.getInputStream());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
     @PreAuthorize("hasAnyRole('USER')")
     @GetMapping("/api/testrequests")
-    public List<TestRequest> requestHistory() {
+    public TestRequestPage requestHistory(@RequestParam(required = false) String continuationToken,
+                                          @RequestParam(required = false) Integer size) {
+        try {
+            User user = userLoggedInService.getLoggedInUser();
+            return testRequestQueryService.findByUser(user, continuationToken, size);
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+
+
+    }
 
+    // Status, result and suggestion of every request the user made, served from the precomputed history
+    @PreAuthorize("hasAnyRole('USER')")
+    @GetMapping("/api/testrequests/history")
+    public List<TestRequestHistoryEntry> requestHistorySummary() {
         User user = userLoggedInService.getLoggedInUser();
         return testRequestService.getHistoryFor(user);
+    }
+
+    @PreAuthorize("hasAnyRole('USER','TESTER','DOCTOR','GOVERNMENT_AUTHORITY')")
+    @GetMapping("/api/testrequests/{id}")
+    public ResponseEntity<TestRequest> getRequest(@PathVariable Long id, WebRequest webRequest) {
+        try {
+            User user = userLoggedInService.getLoggedInUser();
+            TestRequest testRequest = testRequestQueryService.findTestRequestForUserByID(user, id).orElseThrow(() -> new AppException("Invalid ID"));
 
+            String eTag = ETags.fromVersion(testRequest.getVersion());
+            if (webRequest.checkNotModified(eTag))
+                return null;
 
+            return ResponseEntity.ok().eTag(eTag).body(testRequest);
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
     }
 
 
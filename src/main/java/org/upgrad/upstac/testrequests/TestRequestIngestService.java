@@ -0,0 +1,148 @@
+package org.upgrad.upstac.testrequests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.DuplicateRequestException;
+import org.upgrad.upstac.users.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Bulk registration from CSV or JSON uploads. Records are read as a stream and handled in batches: one IN query finds
+ * the duplicates of a batch, the rest are inserted with JDBC batching in one transaction per batch.
+ */
+@Service
+public class TestRequestIngestService {
+
+    public static final int INGEST_BATCH_SIZE = 500;
+
+    @Autowired
+    private TestRequestService testRequestService;
+
+    @Autowired
+    private ActiveRequestKeyService activeRequestKeyService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+
+    private static Logger logger = LoggerFactory.getLogger(TestRequestIngestService.class);
+
+
+    public BulkIngestReport ingestCsv(User user, InputStream inputStream) {
+        try (TestRequestUploadReader reader = TestRequestUploadReader.forCsv(inputStream)) {
+            return ingest(user, reader);
+        } catch (IOException e) {
+            throw new AppException("Unable to read upload: " + e.getMessage());
+        }
+    }
+
+    public BulkIngestReport ingestJson(User user, InputStream inputStream) {
+        try (TestRequestUploadReader reader = TestRequestUploadReader.forJson(inputStream, objectMapper)) {
+            return ingest(user, reader);
+        } catch (IOException e) {
+            throw new AppException("Unable to read upload: " + e.getMessage());
+        }
+    }
+
+    private BulkIngestReport ingest(User user, TestRequestUploadReader reader) throws IOException {
+        BulkIngestReport report = new BulkIngestReport();
+        List<TestRequestUploadReader.UploadRow> batch = new ArrayList<>(INGEST_BATCH_SIZE);
+
+        TestRequestUploadReader.UploadRow uploadRow;
+        while ((uploadRow = reader.next()) != null) {
+            batch.add(uploadRow);
+            if (batch.size() == INGEST_BATCH_SIZE) {
+                ingestBatch(user, batch, report);
+                batch.clear();
+            }
+        }
+        ingestBatch(user, batch, report);
+
+        logger.info("bulk ingest by " + user.getUserName() + " created " + report.getCreated() + " rejected " + report.getRejected());
+        return report;
+    }
+
+    private void ingestBatch(User user, List<TestRequestUploadReader.UploadRow> batch, BulkIngestReport report) {
+        Map<Long, BulkIngestRow> results = new HashMap<>();
+        List<TestRequestUploadReader.UploadRow> valid = new ArrayList<>();
+        for (TestRequestUploadReader.UploadRow uploadRow : batch) {
+            String error = uploadRow.getError() != null ? uploadRow.getError() : validate(uploadRow.getRequest());
+            if (error != null)
+                results.put(uploadRow.getRow(), new BulkIngestRow(uploadRow.getRow(), BulkIngestRow.Outcome.INVALID, null, error));
+            else
+                valid.add(uploadRow);
+        }
+
+        Set<String> keys = new HashSet<>();
+        valid.forEach(uploadRow -> keys.addAll(keysOf(uploadRow)));
+        Set<String> claimed = new HashSet<>(activeRequestKeyService.findClaimed(keys));
+
+        // a key taken by an earlier row of the same batch makes the row a duplicate as well
+        List<TestRequestUploadReader.UploadRow> accepted = new ArrayList<>();
+        for (TestRequestUploadReader.UploadRow uploadRow : valid) {
+            List<String> rowKeys = keysOf(uploadRow);
+            if (rowKeys.stream().anyMatch(claimed::contains)) {
+                results.put(uploadRow.getRow(), duplicateRow(uploadRow.getRow()));
+            } else {
+                claimed.addAll(rowKeys);
+                accepted.add(uploadRow);
+            }
+        }
+
+        try {
+            List<CreateTestRequest> createTestRequests = new ArrayList<>();
+            accepted.forEach(uploadRow -> createTestRequests.add(uploadRow.getRequest()));
+
+            List<TestRequest> testRequests = testRequestService.createTestRequestsFrom(user, createTestRequests);
+            for (int i = 0; i < accepted.size(); i++)
+                results.put(accepted.get(i).getRow(), createdRow(accepted.get(i).getRow(), testRequests.get(i)));
+        } catch (AppException | DataAccessException e) {
+            // lost a race with a concurrent create or a row was refused, the batch was rolled back so settle it one row at a time
+            for (TestRequestUploadReader.UploadRow uploadRow : accepted)
+                results.put(uploadRow.getRow(), ingestRow(user, uploadRow));
+        }
+
+        batch.forEach(uploadRow -> report.add(results.get(uploadRow.getRow())));
+    }
+
+    private String validate(CreateTestRequest createTestRequest) {
+        if (isBlank(createTestRequest.getName()) || isBlank(createTestRequest.getEmail()) || isBlank(createTestRequest.getPhoneNumber()))
+            return "name, email and phoneNumber are required";
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private BulkIngestRow ingestRow(User user, TestRequestUploadReader.UploadRow uploadRow) {
+        try {
+            return createdRow(uploadRow.getRow(), testRequestService.createTestRequestFrom(user, uploadRow.getRequest()));
+        } catch (DuplicateRequestException e) {
+            return duplicateRow(uploadRow.getRow());
+        } catch (AppException | DataAccessException e) {
+            return new BulkIngestRow(uploadRow.getRow(), BulkIngestRow.Outcome.INVALID, null, e.getMessage());
+        }
+    }
+
+    private static List<String> keysOf(TestRequestUploadReader.UploadRow uploadRow) {
+        return ActiveRequestKeyService.keysOf(uploadRow.getRequest().getEmail(), uploadRow.getRequest().getPhoneNumber());
+    }
+
+    private static BulkIngestRow createdRow(long row, TestRequest testRequest) {
+        return new BulkIngestRow(row, BulkIngestRow.Outcome.CREATED, testRequest.getRequestId(), null);
+    }
+
+    private static BulkIngestRow duplicateRow(long row) {
+        return new BulkIngestRow(row, BulkIngestRow.Outcome.DUPLICATE, null, "A Request with same PhoneNumber or Email is already in progress");
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.upgrad.upstac.testrequests;
+
+import lombok.Data;
+import org.upgrad.upstac.exception.AppException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One slice of a keyset (requestId) ordered listing. The continuationToken is opaque to clients,
+ * pass it back as-is to fetch the next slice; it is null once the listing is exhausted.
+ */
+@Data
+public class TestRequestPage {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private List<TestRequest> content;
+
+    private String continuationToken;
+
+    public TestRequestPage() {
+
+    }
+
+    public TestRequestPage(List<TestRequest> content, String continuationToken) {
+        this.content = content;
+        this.continuationToken = continuationToken;
+    }
+
+    public static int pageSizeFrom(Integer size) {
+        if (size == null || size <= 0)
+            return DEFAULT_PAGE_SIZE;
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    public static String toContinuationToken(Long lastRequestId) {
+        if (lastRequestId == null)
+            return null;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(lastRequestId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Long fromContinuationToken(String continuationToken) {
+        if (continuationToken == null || continuationToken.isEmpty())
+            return 0L;
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new AppException("Invalid continuation token");
+        }
+    }
+
+    /**
+     * Builds a page from a slice fetched with one extra row; the extra row only tells us whether more remain.
+     */
+    public static TestRequestPage of(List<TestRequest> fetched, int pageSize) {
+        if (fetched.size() <= pageSize)
+            return new TestRequestPage(fetched, null);
+
+        List<TestRequest> content = new ArrayList<>(fetched.subList(0, pageSize));
+        return new TestRequestPage(content, toContinuationToken(content.get(pageSize - 1).getRequestId()));
+    }
+}
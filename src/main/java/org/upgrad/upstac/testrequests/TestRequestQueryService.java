@@ -3,18 +3,24 @@ package org.upgrad.upstac.testrequests;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import org.upgrad.upstac.exception.AppException;
-import org.upgrad.upstac.testrequests.consultation.Consultation;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
 import org.upgrad.upstac.testrequests.consultation.ConsultationRepository;
-import org.upgrad.upstac.testrequests.lab.LabResult;
 import org.upgrad.upstac.testrequests.lab.LabResultRepository;
+import org.upgrad.upstac.testrequests.queue.ConsultationPriorityQueue;
 import org.upgrad.upstac.users.User;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -31,6 +37,13 @@ public class TestRequestQueryService {
     @Autowired
     private ConsultationRepository consultationRepository;
 
+    // completed requests are moved here after a while, lookups of a single request or a user's history fall back to it
+    @Autowired
+    private TestRequestArchive testRequestArchive;
+
+    @Autowired
+    private ConsultationPriorityQueue consultationPriorityQueue;
+
     private static Logger logger = LoggerFactory.getLogger(TestRequestQueryService.class);
 
 
@@ -42,7 +55,13 @@ public class TestRequestQueryService {
 
     public Optional<TestRequest> getTestRequestById(Long id) {
 
-        return testRequestRepository.findById(id);
+        return orElseArchived(testRequestRepository.findById(id), id);
+    }
+
+    private Optional<TestRequest> orElseArchived(Optional<TestRequest> testRequest, Long id) {
+        if (testRequest.isPresent())
+            return testRequest;
+        return testRequestArchive.findById(id);
     }
 
 
@@ -53,29 +72,57 @@ public class TestRequestQueryService {
 
     }
 
+    public TestRequestPage findBy(RequestStatus requestStatus, String continuationToken, Integer size) {
+        int pageSize = TestRequestPage.pageSizeFrom(size);
+        Long after = TestRequestPage.fromContinuationToken(continuationToken);
+
+        List<TestRequest> fetched = testRequestRepository.findByStatusAndRequestIdGreaterThanOrderByRequestIdAsc(requestStatus, after, PageRequest.of(0, pageSize + 1));
+        return TestRequestPage.of(fetched, pageSize);
+    }
+
 
 
+    /**
+     * The most urgent requests awaiting consultation, most urgent first. Entries that were assigned in the meantime
+     * are dropped from the queue as they are found
+     */
+    public List<TestRequest> findForConsultationByPriority(Integer size) {
+        int count = TestRequestPage.pageSizeFrom(size);
+        List<Long> ids = consultationPriorityQueue.top(count);
+        if (ids.isEmpty())
+            return new ArrayList<>();
+
+        Map<Long, TestRequest> byId = testRequestRepository.findAllWithDetailsByRequestIdIn(ids).stream()
+                .collect(Collectors.toMap(TestRequest::getRequestId, Function.identity()));
+
+        List<TestRequest> testRequests = new ArrayList<>(ids.size());
+        List<Long> stale = new ArrayList<>();
+        for (Long id : ids) {
+            TestRequest testRequest = byId.get(id);
+            if (testRequest != null && testRequest.getStatus() == RequestStatus.LAB_TEST_COMPLETED)
+                testRequests.add(testRequest);
+            else
+                stale.add(id);
+        }
+        consultationPriorityQueue.removeAll(stale);
+        return testRequests;
+    }
+
     public List<TestRequest> findByTester(User user) {
 
-        return  labResultRepository.findByTester(user)
-                .stream()
-                .map(LabResult::getRequest)
-                .collect(Collectors.toList());
+        return  testRequestRepository.findAllAssignedToTester(user);
 
     }
 
     public List<TestRequest> findByDoctor(User user) {
-        return  consultationRepository.findByDoctor(user)
-                .stream()
-                .map(Consultation::getRequest)
-                .collect(Collectors.toList());
+        return  testRequestRepository.findAllAssignedToDoctor(user);
     }
 
 
     public Optional<TestRequest> findTestRequestForUserByID(User user,Long id) {
 
 
-        logger.info("findTestRequestForUserByID" + user.getRoles().toString());
+        logger.info("findTestRequestForUserByID " + user.getUserName() + " roleMask " + user.getRoleMask());
 
         if(user.doesRoleIsUser())
             return  findByUserAndID(user,id);
@@ -84,7 +131,7 @@ public class TestRequestQueryService {
         else if(user.doesRoleIsDoctor())
             return findByDoctorAndID(user,id);
         else if(user.doesRoleIsAuthority())
-            return testRequestRepository.findByRequestId(id);
+            return orElseArchived(testRequestRepository.findByRequestId(id), id);
         else
             throw new AppException("Invalid Role");
 
@@ -95,8 +142,11 @@ public class TestRequestQueryService {
     public Optional<TestRequest> findByDoctorAndID(User doctor,Long id) {
 
 
-        return  testRequestRepository.findByRequestId(id)
-                .filter(testRequest -> consultationRepository.findByDoctorAndRequest(doctor,testRequest).isPresent());
+        Optional<TestRequest> testRequest = testRequestRepository.findByRequestId(id);
+        if (testRequest.isPresent())
+            return testRequest.filter(found -> consultationRepository.findByDoctorAndRequest(doctor,found).isPresent());
+
+        return testRequestArchive.findById(id, archived -> doctor.getId().equals(archived.getDoctorId()));
 
     }
     public Optional<TestRequest> findByTesterAndID(User tester,Long id) {
@@ -104,8 +154,11 @@ public class TestRequestQueryService {
 
 
 
-        return  testRequestRepository.findByRequestId(id)
-                .filter(testRequest -> labResultRepository.findByTesterAndRequest(tester,testRequest).isPresent());
+        Optional<TestRequest> testRequest = testRequestRepository.findByRequestId(id);
+        if (testRequest.isPresent())
+            return testRequest.filter(found -> labResultRepository.findByTesterAndRequest(tester,found).isPresent());
+
+        return testRequestArchive.findById(id, archived -> tester.getId().equals(archived.getTesterId()));
 
 
 
@@ -117,14 +170,38 @@ public class TestRequestQueryService {
 
     public Optional<TestRequest> findByUserAndID(User user,Long id) {
 
-        return  testRequestRepository.findByCreatedByAndRequestId(user,id);
+        Optional<TestRequest> testRequest = testRequestRepository.findByCreatedByAndRequestId(user,id);
+        if (testRequest.isPresent())
+            return testRequest;
+
+        return testRequestArchive.findById(id, archived -> user.getId().equals(archived.getCreatedById()));
 
     }
 
     public List<TestRequest> findByUser(User user) {
-        return  testRequestRepository.findByCreatedBy(user);
+        return  mergeByRequestId(testRequestRepository.findByCreatedBy(user), testRequestArchive.findByCreatedBy(user.getId()));
+
 
+    }
 
+    public TestRequestPage findByUser(User user, String continuationToken, Integer size) {
+        int pageSize = TestRequestPage.pageSizeFrom(size);
+        Long after = TestRequestPage.fromContinuationToken(continuationToken);
+
+        List<TestRequest> fetched = mergeByRequestId(
+                testRequestRepository.findByCreatedByAndRequestIdGreaterThanOrderByRequestIdAsc(user, after, PageRequest.of(0, pageSize + 1)),
+                testRequestArchive.findByCreatedBy(user.getId(), after, pageSize + 1));
+        return TestRequestPage.of(fetched.size() > pageSize + 1 ? new ArrayList<>(fetched.subList(0, pageSize + 1)) : fetched, pageSize);
+    }
+
+    // a request is either in test_request or archived, never both, so merging by id keeps the keyset order intact
+    private List<TestRequest> mergeByRequestId(List<TestRequest> testRequests, List<TestRequest> archivedTestRequests) {
+        if (archivedTestRequests.isEmpty())
+            return testRequests;
+
+        return Stream.concat(testRequests.stream(), archivedTestRequests.stream())
+                .sorted(Comparator.comparing(TestRequest::getRequestId))
+                .collect(Collectors.toList());
     }
 
 }
@@ -1,11 +1,22 @@
 package org.upgrad.upstac.testrequests;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.upgrad.upstac.users.User;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 
 public interface TestRequestRepository extends JpaRepository<TestRequest,Long> {
 
@@ -19,6 +30,10 @@ public interface TestRequestRepository extends JpaRepository<TestRequest,Long> {
 	List<TestRequest> findByEmail(String email);
 	List<TestRequest> findByEmailOrPhoneNumber(String email,String phoneNumber);
 
+	boolean existsByEmailAndStatusNot(String email, RequestStatus status);
+
+	boolean existsByPhoneNumberAndStatusNot(String phoneNumber, RequestStatus status);
+
 	List<TestRequest> findByPhoneNumber(String phoneNumber);
 
 	void deleteById(Long id);
@@ -30,6 +45,61 @@ public interface TestRequestRepository extends JpaRepository<TestRequest,Long> {
 	List<TestRequest> findByName(String name);
 
 	List<TestRequest> findByStatus(RequestStatus status);
+
+	@EntityGraph(attributePaths = {"createdBy", "labResult", "labResult.tester", "consultation", "consultation.doctor"})
+	List<TestRequest> findByStatusAndRequestIdGreaterThanOrderByRequestIdAsc(RequestStatus status, Long requestId, Pageable pageable);
+
+	@EntityGraph(attributePaths = {"createdBy", "labResult", "labResult.tester", "consultation", "consultation.doctor"})
+	List<TestRequest> findByCreatedByAndRequestIdGreaterThanOrderByRequestIdAsc(User user, Long requestId, Pageable pageable);
+
+	// Only the ids, for claimers that take rows one guarded update at a time and lose some of them to others
+	@Query("select t.requestId from TestRequest t where t.status = :status and t.requestId > :after order by t.requestId")
+	List<Long> findIdsByStatusAfter(@Param("status") RequestStatus status, @Param("after") Long after, Pageable pageable);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	List<TestRequest> findByRequestIdInAndStatus(Collection<Long> ids, RequestStatus status);
+
+	// Locks the oldest rows in the given status, skipping rows other claimers already hold (MySQL 8+)
+	@Query(value = "select * from test_request where status = :status order by request_id limit :count for update skip locked", nativeQuery = true)
+	List<TestRequest> findNextForUpdateSkipLocked(@Param("status") int status, @Param("count") int count);
+
+	@Modifying(clearAutomatically = true)
+	@Query("update TestRequest t set t.status = :to, t.version = t.version + 1 where t.requestId = :id and t.status = :from")
+	int updateStatusIfCurrent(@Param("id") Long id, @Param("from") RequestStatus from, @Param("to") RequestStatus to);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update TestRequest t set t.status = :to, t.version = t.version + 1 where t.requestId in :ids and t.status = :from")
+	int updateStatusForAll(@Param("ids") Collection<Long> ids, @Param("from") RequestStatus from, @Param("to") RequestStatus to);
+
+	@Query("select distinct t from TestRequest t" +
+			" left join fetch t.labResult l left join fetch l.tester" +
+			" left join fetch t.consultation c left join fetch c.doctor" +
+			" left join fetch t.createdBy" +
+			" where t.requestId in :ids order by t.requestId")
+	@QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+	List<TestRequest> findAllWithDetailsByRequestIdIn(@Param("ids") Collection<Long> ids);
+
+	@Query("select t.status, count(t) from TestRequest t group by t.status")
+	List<Object[]> countGroupByStatus();
+
+	// Work lists are fetched with everything they serialize in one statement instead of one select per row
+	@Query("select distinct t from TestRequest t" +
+			" join fetch t.labResult l" +
+			" left join fetch l.tester lt left join fetch lt.roles" +
+			" left join fetch t.consultation c left join fetch c.doctor cd left join fetch cd.roles" +
+			" left join fetch t.createdBy u left join fetch u.roles" +
+			" where l.tester = :tester order by t.requestId")
+	@QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+	List<TestRequest> findAllAssignedToTester(@Param("tester") User tester);
+
+	@Query("select distinct t from TestRequest t" +
+			" join fetch t.consultation c" +
+			" left join fetch c.doctor cd left join fetch cd.roles" +
+			" left join fetch t.labResult l left join fetch l.tester lt left join fetch lt.roles" +
+			" left join fetch t.createdBy u left join fetch u.roles" +
+			" where c.doctor = :doctor order by t.requestId")
+	@QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+	List<TestRequest> findAllAssignedToDoctor(@Param("doctor") User doctor);
 	
 
 }
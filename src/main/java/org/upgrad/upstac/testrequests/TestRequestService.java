@@ -3,12 +3,27 @@ package org.upgrad.upstac.testrequests;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.DuplicateRequestException;
+import org.upgrad.upstac.testrequests.assignment.LabAssignmentScheduler;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryEntry;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryService;
 import org.upgrad.upstac.users.User;
 
+import javax.transaction.Transactional;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class TestRequestService {
@@ -16,16 +31,65 @@ public class TestRequestService {
     @Autowired
     private TestRequestRepository testRequestRepository;
 
+    @Autowired
+    private ActiveRequestKeyService activeRequestKeyService;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestRequestHistoryService testRequestHistoryService;
+
+    @Autowired
+    private LabAssignmentScheduler labAssignmentScheduler;
+
+    private static final String INSERT_TEST_REQUEST = "insert into test_request"
+            + " (address, age, created, email, gender, name, phone_number, pin_code, status, created_by_id, version)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
 
 
     private static Logger logger = LoggerFactory.getLogger(TestRequestService.class);
 
 
 
+    @Transactional
     public TestRequest createTestRequestFrom(User user,CreateTestRequest createTestRequest) {
 
         validateExistingRequestsNotPresentWithSameDetails(createTestRequest);
 
+        TestRequest testRequest = toTestRequest(user, createTestRequest);
+        TestRequest savedTestRequest = testRequestRepository.save(testRequest);
+        activeRequestKeyService.claim(savedTestRequest);
+        applicationEventPublisher.publishEvent(StatusChanged.created(Collections.singletonList(savedTestRequest), user.getId()));
+        labAssignmentScheduler.assign(savedTestRequest);
+        return savedTestRequest;
+    }
+
+    /**
+     * Inserts all requests with one JDBC batch and claims their keys with another. The caller has already left out
+     * duplicates; if one slips in concurrently the whole batch is rolled back with a DuplicateRequestException
+     */
+    @Transactional
+    public List<TestRequest> createTestRequestsFrom(User user, List<CreateTestRequest> createTestRequests) {
+
+        List<TestRequest> testRequests = createTestRequests.stream()
+                .map(createTestRequest -> toTestRequest(user, createTestRequest))
+                .collect(Collectors.toList());
+
+        if (testRequests.isEmpty() == false) {
+            insertAll(testRequests);
+            activeRequestKeyService.claimAll(testRequests);
+            applicationEventPublisher.publishEvent(StatusChanged.created(testRequests, user.getId()));
+            labAssignmentScheduler.assignAll(testRequests);
+        }
+        return testRequests;
+    }
+
+    private TestRequest toTestRequest(User user, CreateTestRequest createTestRequest) {
         TestRequest testRequest = new TestRequest();
 
         testRequest.setName(createTestRequest.getName());
@@ -39,18 +103,48 @@ public class TestRequestService {
         testRequest.setGender(createTestRequest.getGender());
 
         testRequest.setCreatedBy(user);
-        return testRequestRepository.save(testRequest);
+        return testRequest;
     }
 
-    public void validateExistingRequestsNotPresentWithSameDetails(CreateTestRequest createTestRequest) {
-        List<TestRequest> testRequests = testRequestRepository.findByEmailOrPhoneNumber(createTestRequest.getEmail(), createTestRequest.getPhoneNumber());
-
+    private void insertAll(List<TestRequest> testRequests) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TEST_REQUEST, Statement.RETURN_GENERATED_KEYS)) {
+                for (TestRequest testRequest : testRequests) {
+                    statement.setString(1, testRequest.getAddress());
+                    statement.setObject(2, testRequest.getAge(), Types.INTEGER);
+                    statement.setDate(3, Date.valueOf(testRequest.getCreated()));
+                    statement.setString(4, testRequest.getEmail());
+                    statement.setObject(5, testRequest.getGender() == null ? null : testRequest.getGender().ordinal(), Types.INTEGER);
+                    statement.setString(6, testRequest.getName());
+                    statement.setString(7, testRequest.getPhoneNumber());
+                    statement.setObject(8, testRequest.getPinCode(), Types.INTEGER);
+                    statement.setInt(9, testRequest.getStatus().ordinal());
+                    statement.setLong(10, testRequest.getCreatedBy().getId());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                int index = 0;
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    while (generatedKeys.next())
+                        testRequests.get(index++).setRequestId(generatedKeys.getLong(1));
+                }
+                if (index != testRequests.size())
+                    throw new IllegalStateException("Expected " + testRequests.size() + " generated ids but got " + index);
+            }
+            return null;
+        });
+    }
 
-        for (TestRequest testRequest : testRequests) {
+    /**
+     * Two index probes on (email, status) and (phone_number, status), completed requests are never read. This only
+     * rejects the common case early, the active request keys claimed on create are what the database enforces
+     */
+    public void validateExistingRequestsNotPresentWithSameDetails(CreateTestRequest createTestRequest) {
 
-            if (testRequest.getStatus().equals(RequestStatus.COMPLETED) == false)
-                throw new AppException("A Request with same PhoneNumber or Email is already in progress ");
-        }
+        if (testRequestRepository.existsByEmailAndStatusNot(createTestRequest.getEmail(), RequestStatus.COMPLETED)
+                || testRequestRepository.existsByPhoneNumberAndStatusNot(createTestRequest.getPhoneNumber(), RequestStatus.COMPLETED))
+            throw new DuplicateRequestException();
 
     }
 
@@ -59,9 +153,9 @@ public class TestRequestService {
         return testRequestRepository.findByStatus(requestStatus);
     }
 
-    public List<TestRequest> getHistoryFor(User loggedInUser){
+    public List<TestRequestHistoryEntry> getHistoryFor(User loggedInUser){
 
-        return testRequestRepository.findByCreatedBy(loggedInUser);
+        return testRequestHistoryService.findByUser(loggedInUser);
     }
 
 
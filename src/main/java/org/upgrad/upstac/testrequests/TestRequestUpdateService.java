@@ -2,26 +2,40 @@ package org.upgrad.upstac.testrequests;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.ConflictException;
 import org.upgrad.upstac.testrequests.consultation.Consultation;
 import org.upgrad.upstac.testrequests.consultation.ConsultationService;
 import org.upgrad.upstac.testrequests.consultation.CreateConsultationRequest;
 import org.upgrad.upstac.testrequests.flow.TestRequestFlowService;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryService;
 import org.upgrad.upstac.testrequests.lab.LabResult;
 import org.upgrad.upstac.testrequests.lab.LabResultService;
 import org.upgrad.upstac.testrequests.lab.CreateLabResult;
+import org.upgrad.upstac.testrequests.queue.ConsultationPriorityQueue;
+import org.upgrad.upstac.testrequests.statistics.TestRequestStatistics;
 import org.upgrad.upstac.users.User;
 
 import javax.transaction.Transactional;
 import javax.validation.Valid;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @Validated
 public class TestRequestUpdateService {
 
+    public static final int MAX_BULK_ASSIGNMENT_SIZE = 100;
+
     @Autowired
     private TestRequestRepository testRequestRepository;
 
@@ -37,41 +51,102 @@ public class TestRequestUpdateService {
     @Autowired
     private ConsultationService consultationService;
 
+    @Autowired
+    private TestRequestStatistics testRequestStatistics;
+
+    @Autowired
+    private ActiveRequestKeyService activeRequestKeyService;
+
+    @Autowired
+    private TestRequestHistoryService testRequestHistoryService;
+
+    @Autowired
+    private ConsultationPriorityQueue consultationPriorityQueue;
+
+    @Value("${app.queue.skip-locked:false}")
+    private boolean skipLocked;
+
 
     @Transactional
     public TestRequest saveTestRequest(@Valid TestRequest result) {
 
-
-        return testRequestRepository.save(result);
+        try {
+            return testRequestRepository.saveAndFlush(result);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException("Test request was modified by someone else, reload and retry");
+        }
     }
 
 
+    /**
+     * The request is still managed by the surrounding transition transaction, so setting the status is enough;
+     * flushing here surfaces a concurrent modification as a conflict before the transaction commits
+     */
     TestRequest updateStatusAndSave(TestRequest testRequest, RequestStatus status) {
         testRequest.setStatus(status);
-        return saveTestRequest(testRequest);
+
+        try {
+            testRequestRepository.flush();
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException("Test request was modified by someone else, reload and retry");
+        }
+        return testRequest;
     }
 
+    /**
+     * Loads the request in the expected state, and when the caller sent the version it last saw, checks it is still current
+     */
+    TestRequest findForTransition(Long id, RequestStatus status, Long expectedVersion, String errorMessage) {
+        TestRequest testRequest = testRequestRepository.findByRequestIdAndStatus(id, status).orElseThrow(() -> new AppException(errorMessage));
 
+        if (expectedVersion != null && expectedVersion.equals(testRequest.getVersion()) == false)
+            throw new ConflictException("Test request was modified by someone else, reload and retry");
+
+        return testRequest;
+    }
+
+
+    @Transactional
     public TestRequest assignForLabTest(Long id, User tester) {
-        TestRequest testRequest = testRequestRepository.findByRequestIdAndStatus(id,RequestStatus.INITIATED).orElseThrow(()-> new AppException("Invalid ID"));
+        return assignForLabTest(id, tester, null);
+    }
+
+    @Transactional
+    public TestRequest assignForLabTest(Long id, User tester, Long expectedVersion) {
+        TestRequest testRequest = findForTransition(id, RequestStatus.INITIATED, expectedVersion, "Invalid ID");
         LabResult labResult= labResultService.assignForLabTest(testRequest,tester);
         testRequestFlowService.log(testRequest, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, tester);
         testRequest.setLabResult(labResult);
         return updateStatusAndSave(testRequest, RequestStatus.LAB_TEST_IN_PROGRESS);
     }
 
+    @Transactional
     public TestRequest updateLabTest(Long id,@Valid CreateLabResult createLabResult, User tester) {
+        return updateLabTest(id, createLabResult, tester, null);
+    }
 
-        TestRequest testRequest = testRequestRepository.findByRequestIdAndStatus(id,RequestStatus.LAB_TEST_IN_PROGRESS).orElseThrow(()-> new AppException("Invalid ID or State"));
+    @Transactional
+    public TestRequest updateLabTest(Long id,@Valid CreateLabResult createLabResult, User tester, Long expectedVersion) {
 
+        TestRequest testRequest = findForTransition(id, RequestStatus.LAB_TEST_IN_PROGRESS, expectedVersion, "Invalid ID or State");
 
-        labResultService.updateLabTest(testRequest,createLabResult);
+
+        LabResult labResult = labResultService.updateLabTest(testRequest,createLabResult);
+        consultationPriorityQueue.add(testRequest, labResult);
+        testRequestStatistics.recordLabResult(createLabResult.getResult());
+        testRequestHistoryService.recordLabResult(testRequest, createLabResult.getResult());
         testRequestFlowService.log(testRequest, RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED, tester);
         return updateStatusAndSave(testRequest, RequestStatus.LAB_TEST_COMPLETED);
     }
 
+    @Transactional
     public TestRequest assignForConsultation(Long id, User doctor) {
-        TestRequest testRequest = testRequestRepository.findByRequestIdAndStatus(id,RequestStatus.LAB_TEST_COMPLETED).orElseThrow(()-> new AppException("Invalid ID or State"));
+        return assignForConsultation(id, doctor, null);
+    }
+
+    @Transactional
+    public TestRequest assignForConsultation(Long id, User doctor, Long expectedVersion) {
+        TestRequest testRequest = findForTransition(id, RequestStatus.LAB_TEST_COMPLETED, expectedVersion, "Invalid ID or State");
         Consultation consultation =consultationService.assignForConsultation(testRequest,doctor);
         testRequestFlowService.log(testRequest, RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS, doctor);
         testRequest.setConsultation(consultation);
@@ -79,13 +154,167 @@ public class TestRequestUpdateService {
     }
 
 
+    @Transactional
     public TestRequest updateConsultation(Long id, @Valid CreateConsultationRequest createConsultationRequest, User doctor) {
+        return updateConsultation(id, createConsultationRequest, doctor, null);
+    }
+
+    @Transactional
+    public TestRequest updateConsultation(Long id, @Valid CreateConsultationRequest createConsultationRequest, User doctor, Long expectedVersion) {
 
-        TestRequest testRequest = testRequestRepository.findByRequestIdAndStatus(id,RequestStatus.DIAGNOSIS_IN_PROCESS).orElseThrow(()-> new AppException("Invalid ID or State"));
+        TestRequest testRequest = findForTransition(id, RequestStatus.DIAGNOSIS_IN_PROCESS, expectedVersion, "Invalid ID or State");
         consultationService.updateConsultation(testRequest,createConsultationRequest);
+        testRequestStatistics.recordSuggestion(createConsultationRequest.getSuggestion());
+        testRequestHistoryService.recordSuggestion(testRequest, createConsultationRequest.getSuggestion());
         testRequestFlowService.log(testRequest, RequestStatus.DIAGNOSIS_IN_PROCESS, RequestStatus.COMPLETED, doctor);
+        activeRequestKeyService.release(testRequest);
         return updateStatusAndSave(testRequest, RequestStatus.COMPLETED);
     }
 
 
+    /**
+     * Claims all given requests still INITIATED for the tester in one transaction, the rest are reported as skipped
+     */
+    @Transactional
+    public BulkAssignmentResult assignForLabTest(List<Long> ids, User tester) {
+        Set<Long> requestedIds = validateBulkIds(ids);
+        List<TestRequest> testRequests = testRequestRepository.findByRequestIdInAndStatus(requestedIds, RequestStatus.INITIATED);
+
+        List<Long> assignedIds = updateStatusForAll(testRequests, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS);
+        if (assignedIds.isEmpty() == false) {
+            labResultService.assignForLabTest(testRequests, tester);
+            testRequestFlowService.log(testRequests, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, tester);
+        }
+
+        return toBulkAssignmentResult(requestedIds, assignedIds);
+    }
+
+    /**
+     * Claims all given requests still LAB_TEST_COMPLETED for the doctor in one transaction, the rest are reported as skipped
+     */
+    @Transactional
+    public BulkAssignmentResult assignForConsultation(List<Long> ids, User doctor) {
+        Set<Long> requestedIds = validateBulkIds(ids);
+        List<TestRequest> testRequests = testRequestRepository.findByRequestIdInAndStatus(requestedIds, RequestStatus.LAB_TEST_COMPLETED);
+
+        List<Long> assignedIds = updateStatusForAll(testRequests, RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS);
+        if (assignedIds.isEmpty() == false) {
+            consultationService.assignForConsultation(testRequests, doctor);
+            testRequestFlowService.log(testRequests, RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS, doctor);
+        }
+
+        return toBulkAssignmentResult(requestedIds, assignedIds);
+    }
+
+    /**
+     * Claims the next count INITIATED requests for the tester; concurrent testers never get the same request
+     */
+    @Transactional
+    public BulkAssignmentResult claimNextForLabTest(Integer count, User tester) {
+        List<TestRequest> testRequests = claimNext(count, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS);
+        if (testRequests.isEmpty() == false) {
+            labResultService.assignForLabTest(testRequests, tester);
+            testRequestFlowService.log(testRequests, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, tester);
+        }
+        return toClaimResult(testRequests);
+    }
+
+    /**
+     * Claims the next count LAB_TEST_COMPLETED requests for the doctor; concurrent doctors never get the same request
+     */
+    @Transactional
+    public BulkAssignmentResult claimNextForConsultation(Integer count, User doctor) {
+        List<TestRequest> testRequests = claimNext(count, RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS);
+        if (testRequests.isEmpty() == false) {
+            consultationService.assignForConsultation(testRequests, doctor);
+            testRequestFlowService.log(testRequests, RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS, doctor);
+        }
+        return toClaimResult(testRequests);
+    }
+
+    /**
+     * With SKIP LOCKED the rows another claimer holds are simply passed over. Without it each candidate id is taken with a
+     * guarded update, a lost race costs one no-op update and the claimer moves on to the next candidate instead of retrying.
+     * Candidates are fetched a page at a time past the last one tried, until enough are claimed or the queue runs out, and
+     * only the claimed requests are loaded.
+     */
+    List<TestRequest> claimNext(Integer count, RequestStatus from, RequestStatus to) {
+        int claimCount = validateClaimCount(count);
+
+        if (skipLocked) {
+            List<TestRequest> testRequests = testRequestRepository.findNextForUpdateSkipLocked(from.ordinal(), claimCount);
+            updateStatusForAll(testRequests, from, to);
+            return testRequests;
+        }
+
+        List<Long> claimedIds = new ArrayList<>();
+        Long after = 0L;
+        while (claimedIds.size() < claimCount) {
+            int pageSize = (claimCount - claimedIds.size()) * 2;
+            List<Long> candidateIds = testRequestRepository.findIdsByStatusAfter(from, after, PageRequest.of(0, pageSize));
+            for (Long candidateId : candidateIds) {
+                if (claimedIds.size() == claimCount)
+                    break;
+                if (testRequestRepository.updateStatusIfCurrent(candidateId, from, to) == 1)
+                    claimedIds.add(candidateId);
+                after = candidateId;
+            }
+            if (candidateIds.size() < pageSize)
+                break;
+        }
+
+        if (claimedIds.isEmpty())
+            return new ArrayList<>();
+        return testRequestRepository.findAllWithDetailsByRequestIdIn(claimedIds);
+    }
+
+    int validateClaimCount(Integer count) {
+        if (count == null || count <= 0)
+            return 1;
+        return Math.min(count, MAX_BULK_ASSIGNMENT_SIZE);
+    }
+
+    BulkAssignmentResult toClaimResult(List<TestRequest> testRequests) {
+        List<Long> claimedIds = testRequests.stream()
+                .map(TestRequest::getRequestId)
+                .collect(Collectors.toList());
+
+        return toBulkAssignmentResult(new LinkedHashSet<>(claimedIds), claimedIds);
+    }
+
+    Set<Long> validateBulkIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty())
+            throw new AppException("No IDs to assign");
+
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        requestedIds.remove(null);
+        if (requestedIds.size() > MAX_BULK_ASSIGNMENT_SIZE)
+            throw new AppException("Cannot assign more than " + MAX_BULK_ASSIGNMENT_SIZE + " requests at once");
+
+        return requestedIds;
+    }
+
+    List<Long> updateStatusForAll(List<TestRequest> testRequests, RequestStatus from, RequestStatus to) {
+        List<Long> ids = testRequests.stream()
+                .map(TestRequest::getRequestId)
+                .collect(Collectors.toList());
+
+        if (ids.isEmpty())
+            return ids;
+
+        if (testRequestRepository.updateStatusForAll(ids, from, to) != ids.size())
+            throw new ConflictException("Requests were updated concurrently, please retry");
+
+        return ids;
+    }
+
+    BulkAssignmentResult toBulkAssignmentResult(Set<Long> requestedIds, List<Long> assignedIds) {
+        List<Long> skipped = new ArrayList<>(requestedIds);
+        skipped.removeAll(assignedIds);
+
+        List<TestRequest> assigned = assignedIds.isEmpty() ? new ArrayList<>() : testRequestRepository.findAllWithDetailsByRequestIdIn(assignedIds);
+        return new BulkAssignmentResult(assigned, skipped);
+    }
+
+
 }
@@ -0,0 +1,200 @@
+package org.upgrad.upstac.testrequests;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.upgrad.upstac.users.models.Gender;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads an upload of test requests one record at a time, so only the current record is held in memory.
+ * A record that cannot be read comes back with an error instead of a request.
+ */
+abstract class TestRequestUploadReader implements Closeable {
+
+    @Data
+    static class UploadRow {
+
+        private final long row;
+
+        private final CreateTestRequest request;
+
+        private final String error;
+    }
+
+    protected long row;
+
+    /**
+     * @return the next record, null once the upload is exhausted
+     */
+    abstract UploadRow next() throws IOException;
+
+
+    static TestRequestUploadReader forJson(InputStream inputStream, ObjectMapper objectMapper) throws IOException {
+        return new JsonReader(objectMapper.readerFor(CreateTestRequest.class).readValues(inputStream));
+    }
+
+    static TestRequestUploadReader forCsv(InputStream inputStream) throws IOException {
+        return new CsvReader(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+    }
+
+
+    // Accepts a top level JSON array as well as newline delimited objects
+    private static class JsonReader extends TestRequestUploadReader {
+
+        private final MappingIterator<CreateTestRequest> iterator;
+        private boolean broken;
+
+        JsonReader(MappingIterator<CreateTestRequest> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        UploadRow next() throws IOException {
+            if (broken)
+                return null;
+
+            row++;
+            try {
+                if (iterator.hasNextValue() == false)
+                    return null;
+                return new UploadRow(row, iterator.nextValue(), null);
+            } catch (JsonMappingException e) {
+                // bad values inside a well formed object, the iterator skips to the next one
+                return new UploadRow(row, null, "Invalid record: " + e.getOriginalMessage());
+            } catch (JsonProcessingException e) {
+                // malformed JSON, nothing after this point can be trusted
+                broken = true;
+                return new UploadRow(row, null, "Malformed JSON, upload stopped here: " + e.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            iterator.close();
+        }
+    }
+
+
+    // Header line with the CreateTestRequest field names in any order, double quoted values may contain commas
+    private static class CsvReader extends TestRequestUploadReader {
+
+        private final BufferedReader reader;
+        private List<String> header;
+
+        CsvReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        UploadRow next() throws IOException {
+            String line = nextNonBlankLine();
+            if (line == null)
+                return null;
+
+            if (header == null) {
+                header = new ArrayList<>();
+                for (String name : split(line))
+                    header.add(name.trim().toLowerCase(Locale.ROOT));
+                line = nextNonBlankLine();
+                if (line == null)
+                    return null;
+            }
+
+            row++;
+            List<String> values = split(line);
+            if (values.size() != header.size())
+                return new UploadRow(row, null, "Expected " + header.size() + " columns but found " + values.size());
+
+            CreateTestRequest request = new CreateTestRequest();
+            for (int i = 0; i < header.size(); i++) {
+                String value = values.get(i).trim();
+                if (value.isEmpty())
+                    continue;
+                try {
+                    set(request, header.get(i), value);
+                } catch (IllegalArgumentException e) {
+                    return new UploadRow(row, null, "Invalid value for " + header.get(i) + ": " + value);
+                }
+            }
+            return new UploadRow(row, request, null);
+        }
+
+        private String nextNonBlankLine() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.trim().isEmpty());
+            return line;
+        }
+
+        private static void set(CreateTestRequest request, String column, String value) {
+            switch (column) {
+                case "name":
+                    request.setName(value);
+                    break;
+                case "gender":
+                    request.setGender(Gender.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "address":
+                    request.setAddress(value);
+                    break;
+                case "age":
+                    request.setAge(Integer.valueOf(value));
+                    break;
+                case "email":
+                    request.setEmail(value);
+                    break;
+                case "phonenumber":
+                    request.setPhoneNumber(value);
+                    break;
+                case "pincode":
+                    request.setPinCode(Integer.valueOf(value));
+                    break;
+                default:
+                    // unknown columns are ignored, same as unknown JSON properties
+            }
+        }
+
+        static List<String> split(String line) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.upgrad.upstac.testrequests.archive;
+
+import lombok.Data;
+import lombok.ToString;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * A completed test request moved out of test_request, together with its lab result, consultation and flows. The
+ * columns are what lookups filter on, the request itself is kept as a gzipped JSON document.
+ */
+@Data
+@Entity
+@Table(indexes = @Index(name = "idx_archived_test_request_created_by", columnList = "createdById,requestId"))
+public class ArchivedTestRequest {
+
+    @Id
+    private Long requestId;
+
+    private Long createdById;
+
+    private Long testerId;
+
+    private Long doctorId;
+
+    private LocalDate created;
+
+    private TestStatus result;
+
+    private DoctorSuggestion suggestion;
+
+    private LocalDate archivedOn;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "mediumblob")
+    @ToString.Exclude
+    private byte[] document;
+
+}
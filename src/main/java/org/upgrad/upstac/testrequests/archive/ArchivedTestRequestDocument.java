@@ -0,0 +1,15 @@
+package org.upgrad.upstac.testrequests.archive;
+
+import lombok.Data;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlow;
+
+import java.util.List;
+
+@Data
+public class ArchivedTestRequestDocument {
+
+    private TestRequest testRequest;
+
+    private List<TestRequestFlow> flows;
+}
@@ -0,0 +1,23 @@
+package org.upgrad.upstac.testrequests.archive;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+
+public interface ArchivedTestRequestRepository extends JpaRepository<ArchivedTestRequest,Long> {
+
+
+    List<ArchivedTestRequest> findByCreatedByIdAndRequestIdGreaterThanOrderByRequestIdAsc(Long createdById, Long requestId, Pageable pageable);
+
+    List<ArchivedTestRequest> findByCreatedById(Long createdById);
+
+    @Query("select a.result, count(a) from ArchivedTestRequest a where a.result is not null group by a.result")
+    List<Object[]> countGroupByResult();
+
+    @Query("select a.suggestion, count(a) from ArchivedTestRequest a where a.suggestion is not null group by a.suggestion")
+    List<Object[]> countGroupBySuggestion();
+
+}
@@ -0,0 +1,94 @@
+package org.upgrad.upstac.testrequests.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads archived test requests back as the entities they were archived from, so callers do not need to know whether a
+ * request is still in test_request or was moved out.
+ */
+@Component
+public class TestRequestArchive {
+
+    @Autowired
+    private ArchivedTestRequestRepository archivedTestRequestRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+
+    public Optional<TestRequest> findById(Long id) {
+        return findById(id, archivedTestRequest -> true);
+    }
+
+    // the filter sees the indexed columns, the document is only decoded when it passes
+    public Optional<TestRequest> findById(Long id, Predicate<ArchivedTestRequest> filter) {
+        return archivedTestRequestRepository.findById(id)
+                .filter(filter)
+                .map(archivedTestRequest -> decode(archivedTestRequest).getTestRequest());
+    }
+
+    public List<TestRequest> findByCreatedBy(Long userId) {
+        return decodeAll(archivedTestRequestRepository.findByCreatedById(userId));
+    }
+
+    public List<TestRequest> findByCreatedBy(Long userId, Long after, int limit) {
+        return decodeAll(archivedTestRequestRepository.findByCreatedByIdAndRequestIdGreaterThanOrderByRequestIdAsc(userId, after, PageRequest.of(0, limit)));
+    }
+
+    public Map<Long, List<TestRequestFlow>> findFlows(Collection<Long> ids) {
+        Map<Long, List<TestRequestFlow>> flows = new HashMap<>();
+        for (ArchivedTestRequest archivedTestRequest : archivedTestRequestRepository.findAllById(ids))
+            flows.put(archivedTestRequest.getRequestId(), decode(archivedTestRequest).getFlows());
+        return flows;
+    }
+
+    private List<TestRequest> decodeAll(List<ArchivedTestRequest> archivedTestRequests) {
+        return archivedTestRequests.stream()
+                .map(archivedTestRequest -> decode(archivedTestRequest).getTestRequest())
+                .collect(Collectors.toList());
+    }
+
+
+    public byte[] encode(TestRequest testRequest, List<TestRequestFlow> flows) {
+        ArchivedTestRequestDocument document = new ArchivedTestRequestDocument();
+        document.setTestRequest(testRequest);
+        document.setFlows(flows);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(outputStream, document);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive test request " + testRequest.getRequestId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public ArchivedTestRequestDocument decode(ArchivedTestRequest archivedTestRequest) {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(archivedTestRequest.getDocument()))) {
+            return objectMapper.readValue(inputStream, ArchivedTestRequestDocument.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archived test request " + archivedTestRequest.getRequestId(), e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.upgrad.upstac.testrequests.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.TestRequestRepository;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlow;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlowRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves COMPLETED requests created more than the configured number of days ago, with their lab result, consultation
+ * and flows, into archived_test_request. Each batch is archived and deleted in one transaction, so a request is always
+ * in exactly one of the two places and the hot indexes only hold requests still in use.
+ */
+@Component
+public class TestRequestArchiveJob {
+
+    private static final String INSERT_ARCHIVED_TEST_REQUEST = "insert into archived_test_request"
+            + " (request_id, created_by_id, tester_id, doctor_id, created, result, suggestion, archived_on, document)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private TestRequestRepository testRequestRepository;
+
+    @Autowired
+    private TestRequestFlowRepository testRequestFlowRepository;
+
+    @Autowired
+    private TestRequestArchive testRequestArchive;
+
+    @Value("${app.archive.completed-after-days:90}")
+    private int completedAfterDays;
+
+    @Value("${app.archive.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    private final ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "test-request-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(TestRequestArchiveJob.class);
+
+
+    @PostConstruct
+    public void start() {
+        archiver.scheduleWithFixedDelay(this::archive, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public int archive() {
+        LocalDate createdBefore = LocalDate.now().minusDays(completedAfterDays);
+        int archived = 0;
+        try {
+            int batch;
+            do {
+                batch = transactionTemplate.execute(status -> archiveBatch(createdBefore));
+                archived += batch;
+            } while (batch == batchSize);
+        } catch (RuntimeException e) {
+            log.error("archiving stopped after " + archived + " test requests", e);
+        }
+
+        if (archived > 0)
+            log.info("archived " + archived + " test requests created before " + createdBefore);
+        return archived;
+    }
+
+    int archiveBatch(LocalDate createdBefore) {
+        List<Long> ids = jdbcTemplate.queryForList("select request_id from test_request where status = ? and created < ? order by request_id limit ?",
+                Long.class, RequestStatus.COMPLETED.ordinal(), Date.valueOf(createdBefore), batchSize);
+        if (ids.isEmpty())
+            return 0;
+
+        Map<Long, List<TestRequestFlow>> flows = new HashMap<>();
+        for (Object[] row : testRequestFlowRepository.findAllByRequestIdIn(ids))
+            flows.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((TestRequestFlow) row[1]);
+
+        List<TestRequest> testRequests = testRequestRepository.findAllWithDetailsByRequestIdIn(ids);
+        insertAll(testRequests, flows, LocalDate.now());
+
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] parameters = ids.toArray();
+        jdbcTemplate.update("delete from test_request_flow where request_request_id in (" + placeholders + ")", parameters);
+        jdbcTemplate.update("delete from lab_result where request_request_id in (" + placeholders + ")", parameters);
+        jdbcTemplate.update("delete from consultation where request_request_id in (" + placeholders + ")", parameters);
+        jdbcTemplate.update("delete from test_request where request_id in (" + placeholders + ")", parameters);
+        return ids.size();
+    }
+
+    private void insertAll(List<TestRequest> testRequests, Map<Long, List<TestRequestFlow>> flows, LocalDate archivedOn) {
+        jdbcTemplate.batchUpdate(INSERT_ARCHIVED_TEST_REQUEST, testRequests, testRequests.size(), (statement, testRequest) -> {
+            List<TestRequestFlow> requestFlows = flows.getOrDefault(testRequest.getRequestId(), Collections.emptyList());
+
+            statement.setLong(1, testRequest.getRequestId());
+            statement.setObject(2, testRequest.getCreatedBy() == null ? null : testRequest.getCreatedBy().getId(), Types.BIGINT);
+            statement.setObject(3, testRequest.getLabResult() == null || testRequest.getLabResult().getTester() == null ? null : testRequest.getLabResult().getTester().getId(), Types.BIGINT);
+            statement.setObject(4, testRequest.getConsultation() == null || testRequest.getConsultation().getDoctor() == null ? null : testRequest.getConsultation().getDoctor().getId(), Types.BIGINT);
+            statement.setDate(5, testRequest.getCreated() == null ? null : Date.valueOf(testRequest.getCreated()));
+            statement.setObject(6, testRequest.getLabResult() == null || testRequest.getLabResult().getResult() == null ? null : testRequest.getLabResult().getResult().ordinal(), Types.INTEGER);
+            statement.setObject(7, testRequest.getConsultation() == null || testRequest.getConsultation().getSuggestion() == null ? null : testRequest.getConsultation().getSuggestion().ordinal(), Types.INTEGER);
+            statement.setDate(8, Date.valueOf(archivedOn));
+            statement.setBytes(9, testRequestArchive.encode(testRequest, requestFlows));
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        archiver.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package org.upgrad.upstac.testrequests.assignment;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+@RestController
+@RequestMapping("/api/government/tester-load")
+public class LabAssignmentController {
+
+
+    @Autowired
+    private LabAssignmentScheduler labAssignmentScheduler;
+
+
+    // Requests each approved tester has in LAB_TEST_IN_PROGRESS, by tester id
+    @GetMapping
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public Map<Long, Integer> getTesterLoad() {
+        return labAssignmentScheduler.getOpenByTester();
+    }
+
+}
@@ -0,0 +1,299 @@
+package org.upgrad.upstac.testrequests.assignment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.TestRequestUpdateService;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.UserRepository;
+import org.upgrad.upstac.users.models.AccountStatus;
+import org.upgrad.upstac.users.roles.UserRole;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.upgrad.upstac.shared.TransactionHooks.afterCommit;
+import static org.upgrad.upstac.shared.TransactionHooks.afterCompletion;
+
+/**
+ * Pushes each new request to the least loaded approved tester, preferring testers registered at the same pin code,
+ * then the same sorting district (first three digits), then anyone. Load is the number of requests a tester has in
+ * LAB_TEST_IN_PROGRESS, kept in memory from the committed status changes and seeded on startup with one query. A tester
+ * at the configured maximum is skipped; when every tester is, the request stays INITIATED for testers to pull.
+ * Assignment is best effort: it runs in its own transaction once the creation has committed, so a failure only leaves
+ * the request INITIATED. The assignment is recorded like a pull, with the tester as the one who changed the status.
+ */
+@Component
+public class LabAssignmentScheduler {
+
+    private static final String SELECT_TESTERS = "select u.id, u.pin_code from user u"
+            + " join user_roles ur on ur.user_id = u.id join role r on r.id = ur.roles_id"
+            + " where r.name = ? and u.status = ?";
+
+    private static final String SEED_IN_PROGRESS = "select t.request_id, l.tester_id from test_request t"
+            + " join lab_result l on l.request_request_id = t.request_id"
+            + " where t.status = ? and l.tester_id is not null";
+
+    private static final int DISTRICT_DIVISOR = 1000;
+
+    // testers found no longer approved are dropped from the pool and the next candidate is tried, up to this many times
+    static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestRequestUpdateService testRequestUpdateService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate requiresNew;
+
+    @Value("${app.assignment.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.assignment.max-open-per-tester:20}")
+    private int maxOpenPerTester;
+
+    @Value("${app.assignment.refresh-minutes:5}")
+    private long refreshMinutes;
+
+    private volatile TesterPool testerPool = new TesterPool(Collections.emptyMap());
+
+    private final ConcurrentMap<Long, Long> testerByRequest = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Long, AtomicInteger> openByTester = new ConcurrentHashMap<>();
+
+    // reloads the tester pool and assigns the created requests
+    private final ScheduledExecutorService assigner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lab-assigner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(LabAssignmentScheduler.class);
+
+
+    @PostConstruct
+    public void start() {
+        // called after the creating transaction committed, when joining it is no longer possible
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        jdbcTemplate.query(SEED_IN_PROGRESS, resultSet -> {
+            assigned(resultSet.getLong(1), resultSet.getLong(2));
+        }, RequestStatus.LAB_TEST_IN_PROGRESS.ordinal());
+        refreshTesters();
+        log.info("seeded lab assignment with " + testerByRequest.size() + " requests in progress");
+
+        // Testers are approved rarely, so the pool is reloaded on an interval rather than tracked per change
+        assigner.scheduleWithFixedDelay(this::refreshTesters, refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    public void refreshTesters() {
+        try {
+            Map<Long, Integer> pinCodeByTester = new HashMap<>();
+            jdbcTemplate.query(SELECT_TESTERS, resultSet -> {
+                int pinCode = resultSet.getInt(2);
+                pinCodeByTester.put(resultSet.getLong(1), resultSet.wasNull() ? null : pinCode);
+            }, UserRole.TESTER.name(), AccountStatus.APPROVED.ordinal());
+            setTesters(pinCodeByTester);
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh testers for lab assignment, keeping the previous ones", e);
+        }
+    }
+
+    synchronized void setTesters(Map<Long, Integer> pinCodeByTester) {
+        testerPool = new TesterPool(pinCodeByTester);
+    }
+
+    private synchronized void removeTester(Long testerId) {
+        Map<Long, Integer> pinCodeByTester = new HashMap<>(testerPool.pinCodeByTester);
+        pinCodeByTester.remove(testerId);
+        testerPool = new TesterPool(pinCodeByTester);
+    }
+
+    // Assigns the just created request in the background once the caller's transaction commits, so the create
+    // response is not held up; right away when there is no transaction
+    public void assign(TestRequest testRequest) {
+        if (enabled == false)
+            return;
+
+        Long requestId = testRequest.getRequestId();
+        Integer pinCode = testRequest.getPinCode();
+        afterCommit(() -> assigner.execute(() -> assignNow(requestId, pinCode)));
+    }
+
+    // Same for a bulk ingest, assigned one by one in the background so the ingest response is not held up
+    public void assignAll(List<TestRequest> testRequests) {
+        if (enabled == false || testRequests.isEmpty())
+            return;
+
+        Map<Long, Integer> pinCodeByRequest = new TreeMap<>();
+        for (TestRequest testRequest : testRequests)
+            pinCodeByRequest.put(testRequest.getRequestId(), testRequest.getPinCode());
+        afterCommit(() -> assigner.execute(() -> pinCodeByRequest.forEach(this::assignNow)));
+    }
+
+    void assignNow(Long requestId, Integer pinCode) {
+        try {
+            requiresNew.execute(status -> {
+                assignInTransaction(requestId, pinCode);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // most often a tester pulled it first
+            log.info("could not assign request " + requestId + " automatically, it stays for testers to pull: " + e.getMessage());
+        }
+    }
+
+    private void assignInTransaction(Long requestId, Integer pinCode) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Optional<Long> testerId = reserveFor(pinCode);
+            if (testerId.isPresent() == false)
+                return;
+
+            // read from the database, not the user cache: the pool and cached users may not know the tester was removed
+            Optional<User> tester = userRepository.findById(testerId.get()).filter(LabAssignmentScheduler::canTest);
+            if (tester.isPresent()) {
+                testRequestUpdateService.assignForLabTest(requestId, tester.get());
+                return;
+            }
+            removeTester(testerId.get());
+        }
+    }
+
+    private static boolean canTest(User user) {
+        return user.getStatus() == AccountStatus.APPROVED && user.doesRoleIsTester();
+    }
+
+    /**
+     * Picks the tester and counts the request against them until the transaction finishes, so concurrent creations see
+     * the load; once committed the status change keeps it counted
+     */
+    Optional<Long> reserveFor(Integer pinCode) {
+        for (List<Long> candidates : testerPool.candidatesFor(pinCode)) {
+            Long testerId = reserveLeastLoaded(candidates);
+            if (testerId != null) {
+                afterCompletion(() -> loadOf(testerId).decrementAndGet());
+                return Optional.of(testerId);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Long reserveLeastLoaded(List<Long> candidates) {
+        while (true) {
+            Long leastLoaded = null;
+            int lowest = maxOpenPerTester;
+            for (Long testerId : candidates) {
+                int open = loadOf(testerId).get();
+                if (open < lowest) {
+                    leastLoaded = testerId;
+                    lowest = open;
+                }
+            }
+            if (leastLoaded == null)
+                return null;
+            if (loadOf(leastLoaded).compareAndSet(lowest, lowest + 1))
+                return leastLoaded;
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        if (event.getTo() == RequestStatus.LAB_TEST_IN_PROGRESS) {
+            for (Long requestId : event.getRequestIds())
+                assigned(requestId, event.getChangedById());
+        } else if (event.getFrom() == RequestStatus.LAB_TEST_IN_PROGRESS) {
+            for (Long requestId : event.getRequestIds()) {
+                Long testerId = testerByRequest.remove(requestId);
+                if (testerId != null)
+                    loadOf(testerId).decrementAndGet();
+            }
+        }
+    }
+
+    private void assigned(Long requestId, Long testerId) {
+        if (testerByRequest.putIfAbsent(requestId, testerId) == null)
+            loadOf(testerId).incrementAndGet();
+    }
+
+    private AtomicInteger loadOf(Long testerId) {
+        return openByTester.computeIfAbsent(testerId, id -> new AtomicInteger());
+    }
+
+    public Map<Long, Integer> getOpenByTester() {
+        Map<Long, Integer> open = new TreeMap<>();
+        for (Long testerId : testerPool.all)
+            open.put(testerId, Math.max(0, loadOf(testerId).get()));
+        return open;
+    }
+
+    @PreDestroy
+    public void stop() {
+        assigner.shutdownNow();
+    }
+
+
+    // Approved testers indexed by pin code and district, replaced as a whole on each refresh
+    private static class TesterPool {
+
+        private final Map<Long, Integer> pinCodeByTester;
+
+        private final List<Long> all = new ArrayList<>();
+
+        private final Map<Integer, List<Long>> byPinCode = new HashMap<>();
+
+        private final Map<Integer, List<Long>> byDistrict = new HashMap<>();
+
+        TesterPool(Map<Long, Integer> pinCodeByTester) {
+            this.pinCodeByTester = pinCodeByTester;
+            new TreeMap<>(pinCodeByTester).forEach((testerId, pinCode) -> {
+                all.add(testerId);
+                if (pinCode != null) {
+                    byPinCode.computeIfAbsent(pinCode, key -> new ArrayList<>()).add(testerId);
+                    byDistrict.computeIfAbsent(pinCode / DISTRICT_DIVISOR, key -> new ArrayList<>()).add(testerId);
+                }
+            });
+        }
+
+        List<List<Long>> candidatesFor(Integer pinCode) {
+            if (pinCode == null)
+                return Collections.singletonList(all);
+
+            List<List<Long>> candidates = new ArrayList<>(3);
+            candidates.add(byPinCode.getOrDefault(pinCode, Collections.emptyList()));
+            candidates.add(byDistrict.getOrDefault(pinCode / DISTRICT_DIVISOR, Collections.emptyList()));
+            candidates.add(all);
+            return candidates;
+        }
+    }
+}
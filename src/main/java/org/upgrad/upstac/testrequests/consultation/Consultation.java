@@ -18,6 +18,10 @@ public class Consultation {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+
     @OneToOne(fetch = FetchType.LAZY)
     @JsonIgnore
     @ToString.Exclude
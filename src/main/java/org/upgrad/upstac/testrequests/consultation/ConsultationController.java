@@ -4,21 +4,31 @@ package org.upgrad.upstac.testrequests.consultation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.upgrad.upstac.config.security.UserLoggedInService;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.ConflictException;
+import org.upgrad.upstac.shared.ETags;
+import org.upgrad.upstac.testrequests.BulkAssignmentResult;
 import org.upgrad.upstac.testrequests.RequestStatus;
 import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.TestRequestPage;
 import org.upgrad.upstac.testrequests.TestRequestQueryService;
 import org.upgrad.upstac.testrequests.TestRequestUpdateService;
 import org.upgrad.upstac.testrequests.flow.TestRequestFlowService;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueue;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueueFeed;
 import org.upgrad.upstac.users.User;
 
 import javax.validation.ConstraintViolationException;
 import java.util.List;
 
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
+import static org.upgrad.upstac.exception.UpgradResponseStatusException.asConflict;
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asConstraintViolation;
 
 
@@ -41,12 +51,33 @@ public class ConsultationController {
     @Autowired
     private UserLoggedInService userLoggedInService;
 
+    @Autowired
+    private TestRequestQueueFeed testRequestQueueFeed;
+
 
     @GetMapping("/in-queue")
     @PreAuthorize("hasAnyRole('DOCTOR')")
-    public List<TestRequest> getForConsultations()  {
-        // This method is used to get the list of test requests having status as 'LAB_TEST_COMPLETED'
-        return testRequestQueryService.findBy(RequestStatus.LAB_TEST_COMPLETED);
+    public TestRequestPage getForConsultations(@RequestParam(required = false) String continuationToken,
+                                               @RequestParam(required = false) Integer size)  {
+        // This method is used to get the list of test requests having status as 'LAB_TEST_COMPLETED', one keyset page at a time
+        try {
+            return testRequestQueryService.findBy(RequestStatus.LAB_TEST_COMPLETED, continuationToken, size);
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    // Same queue ordered by urgency (positive result, low oxygen, age, time waited) instead of by id
+    @GetMapping("/in-queue/priority")
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    public List<TestRequest> getForConsultationsByPriority(@RequestParam(required = false) Integer size) {
+        return testRequestQueryService.findForConsultationByPriority(size);
+    }
+
+    @GetMapping(value = "/in-queue/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    public SseEmitter subscribeToConsultationQueue() {
+        return testRequestQueueFeed.subscribe(TestRequestQueue.CONSULTATION);
     }
 
 
@@ -66,6 +97,38 @@ public class ConsultationController {
         try {
             User loggedInUser = userLoggedInService.getLoggedInUser();
             return testRequestUpdateService.assignForConsultation(id, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    @PutMapping("/assign")
+    public BulkAssignmentResult assignForConsultation(@RequestBody List<Long> ids) {
+        // Assigns all the given test requests to the current doctor in one go, those not awaiting consultation are skipped
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            return testRequestUpdateService.assignForConsultation(ids, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    @PutMapping("/claim")
+    public BulkAssignmentResult claimForConsultation(@RequestParam(required = false) Integer count) {
+        // Assigns the next 'count' test requests awaiting consultation to the current doctor
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            return testRequestUpdateService.claimNextForConsultation(count, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
         } catch (AppException e) {
             throw asBadRequest(e.getMessage());
         }
@@ -81,6 +144,42 @@ public class ConsultationController {
             return testRequestUpdateService.updateConsultation(id, testResult, loggedInUser);
         } catch (ConstraintViolationException e) {
             throw asConstraintViolation(e);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    @PutMapping(value = "/assign/{id}", headers = "If-Match")
+    public ResponseEntity<TestRequest> assignForConsultationIfMatch(@PathVariable Long id, @RequestHeader("If-Match") String ifMatch) {
+        // Same as assignForConsultation, but only if the test request is still at the version the client last saw
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            TestRequest testRequest = testRequestUpdateService.assignForConsultation(id, loggedInUser, ETags.toVersion(ifMatch));
+            return ResponseEntity.ok().eTag(ETags.fromVersion(testRequest.getVersion())).body(testRequest);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+
+    @PreAuthorize("hasAnyRole('DOCTOR')")
+    @PutMapping(value = "/update/{id}", headers = "If-Match")
+    public ResponseEntity<TestRequest> updateConsultationIfMatch(@PathVariable Long id, @RequestHeader("If-Match") String ifMatch, @RequestBody CreateConsultationRequest testResult) {
+        // Same as updateConsultation, but only if the test request is still at the version the client last saw
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            TestRequest testRequest = testRequestUpdateService.updateConsultation(id, testResult, loggedInUser, ETags.toVersion(ifMatch));
+            return ResponseEntity.ok().eTag(ETags.fromVersion(testRequest.getVersion())).body(testRequest);
+        } catch (ConstraintViolationException e) {
+            throw asConstraintViolation(e);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
         } catch (AppException e) {
             throw asBadRequest(e.getMessage());
         }
@@ -1,6 +1,7 @@
 package org.upgrad.upstac.testrequests.consultation;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
@@ -27,5 +28,8 @@ public interface ConsultationRepository extends JpaRepository<Consultation,Long>
 
     Optional<Consultation> findByDoctorAndRequest(User doctor,TestRequest testRequest);
 
+    @Query("select c.suggestion, count(c) from Consultation c where c.suggestion is not null and c.request is not null group by c.suggestion")
+    List<Object[]> countGroupBySuggestion();
+
 
 }
@@ -3,13 +3,16 @@ package org.upgrad.upstac.testrequests.consultation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
+import org.upgrad.upstac.exception.AppException;
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
 
 import javax.transaction.Transactional;
 import java.time.LocalDate;
+import java.util.List;
 
 @Service
 @Validated
@@ -18,6 +21,9 @@ public class ConsultationService {
     @Autowired
     private ConsultationRepository consultationRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private static Logger logger = LoggerFactory.getLogger(ConsultationService.class);
 
 
@@ -32,16 +38,32 @@ public class ConsultationService {
         return consultationRepository.save(consultation);
     }
 
+    /**
+     * Inserts the consultations for all requests as one JDBC batch, identity ids keep Hibernate from batching these itself
+     */
+    public void assignForConsultation(List<TestRequest> testRequests, User doctor) {
+        jdbcTemplate.batchUpdate("insert into consultation (request_request_id, doctor_id) values (?, ?)",
+                testRequests,
+                testRequests.size(),
+                (statement, testRequest) -> {
+                    statement.setLong(1, testRequest.getRequestId());
+                    statement.setLong(2, doctor.getId());
+                });
+    }
+
+    /**
+     * Fills in the row assigned to the doctor; it is managed by the caller's transaction, so the changes are written
+     * with one dirty-checked update when that flushes
+     */
     public Consultation updateConsultation(TestRequest testRequest , CreateConsultationRequest createConsultationRequest) {
-        // Implement this method to update the consultation
 
-        Consultation consultation = new Consultation();
+        Consultation consultation = consultationRepository.findByRequest(testRequest).orElseThrow(() -> new AppException("Invalid ID or State"));
 
         consultation.setSuggestion(createConsultationRequest.getSuggestion());
         consultation.setComments(createConsultationRequest.getComments());
         consultation.setUpdatedOn(LocalDate.now());
 
-        return consultationRepository.save(consultation);
+        return consultation;
 
     }
 
@@ -0,0 +1,59 @@
+package org.upgrad.upstac.testrequests.events;
+
+import lombok.Data;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Published for every status change of one or more test requests, a newly created request comes with a null from
+ * status. Listeners use @TransactionalEventListener so they only see changes that were committed.
+ */
+@Data
+public class StatusChanged {
+
+    private List<Long> requestIds;
+
+    private RequestStatus from;
+
+    private RequestStatus to;
+
+    private Long changedById;
+
+    private Instant happenedAt;
+
+    // only set for creations, later changes are keyed by request id alone
+    private Map<Long, Integer> pinCodes;
+
+    public StatusChanged() {
+
+    }
+
+    public StatusChanged(List<Long> requestIds, RequestStatus from, RequestStatus to, Long changedById) {
+        this.requestIds = requestIds;
+        this.from = from;
+        this.to = to;
+        this.changedById = changedById;
+        this.happenedAt = Instant.now();
+    }
+
+    public static StatusChanged created(List<TestRequest> testRequests, Long changedById) {
+        List<Long> requestIds = testRequests.stream().map(TestRequest::getRequestId).collect(Collectors.toList());
+        StatusChanged event = new StatusChanged(requestIds, null, RequestStatus.INITIATED, changedById);
+
+        Map<Long, Integer> pinCodes = new HashMap<>();
+        for (TestRequest testRequest : testRequests)
+            pinCodes.put(testRequest.getRequestId(), testRequest.getPinCode());
+        event.setPinCodes(pinCodes);
+        return event;
+    }
+
+    public boolean isCreation() {
+        return from == null;
+    }
+}
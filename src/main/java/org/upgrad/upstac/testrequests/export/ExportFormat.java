@@ -0,0 +1,5 @@
+package org.upgrad.upstac.testrequests.export;
+
+public enum ExportFormat {
+    NDJSON, CSV
+}
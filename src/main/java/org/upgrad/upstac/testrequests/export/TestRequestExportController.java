@@ -0,0 +1,52 @@
+package org.upgrad.upstac.testrequests.export;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.upgrad.upstac.testrequests.RequestStatus;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
+
+
+@RestController
+@RequestMapping("/api/government/testrequests/export")
+public class TestRequestExportController {
+
+
+    @Autowired
+    private TestRequestExportService testRequestExportService;
+
+
+    // Written straight to the response while the rows are read, nothing is collected in between; archived requests are
+    // included unless includeArchived=false, they are all completed
+    @GetMapping
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public void export(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       @RequestParam(required = false) RequestStatus status,
+                       @RequestParam(required = false) Integer pinCode,
+                       @RequestParam(defaultValue = "true") boolean includeArchived,
+                       @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+                       HttpServletResponse response) throws IOException {
+
+        if (from != null && to != null && from.isAfter(to))
+            throw asBadRequest("from must not be after to");
+
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(format == ExportFormat.CSV ? "text/csv" : "application/x-ndjson");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"testrequests." + format.name().toLowerCase() + "\"");
+
+        testRequestExportService.export(from, to, status, pinCode, includeArchived, format, response.getOutputStream());
+    }
+
+}
@@ -0,0 +1,293 @@
+package org.upgrad.upstac.testrequests.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.archive.ArchivedTestRequest;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
+import org.upgrad.upstac.testrequests.consultation.Consultation;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.lab.LabResult;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.models.Gender;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full extract of test requests with their lab result and consultation. Rows are streamed from the server one at a
+ * time on a forward only, read only statement and written to the output as they arrive, so memory use does not grow
+ * with the size of the table. Archived requests, all completed, follow the live ones when asked for; each document is
+ * decoded as it arrives and the pin code filter, not a column of the archive, is applied to the decoded request.
+ */
+@Service
+public class TestRequestExportService {
+
+    // Connector/J streams the result set row by row only for this fetch size, without changing the connection's settings
+    static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    static final String[] COLUMNS = {"requestId", "created", "status", "name", "age", "gender", "email", "phoneNumber",
+            "pinCode", "address", "result", "bloodPressure", "heartBeat", "temperature", "oxygenLevel", "systolic", "diastolic",
+            "heartRate", "bodyTemperature", "spo2", "labComments",
+            "labUpdatedOn", "tester", "suggestion", "consultationComments", "consultationUpdatedOn", "doctor"};
+
+    private static final String SELECT = "select t.request_id, t.created, t.status, t.name, t.age, t.gender, t.email,"
+            + " t.phone_number, t.pin_code, t.address, l.result, l.blood_pressure, l.heart_beat, l.temperature,"
+            + " l.oxygen_level, l.systolic, l.diastolic, l.heart_rate, l.body_temperature, l.spo2,"
+            + " l.comments, l.updated_on, tu.user_name, c.suggestion, c.comments, c.updated_on, du.user_name"
+            + " from test_request t"
+            + " left join lab_result l on l.request_request_id = t.request_id"
+            + " left join user tu on tu.id = l.tester_id"
+            + " left join consultation c on c.request_request_id = t.request_id"
+            + " left join user du on du.id = c.doctor_id"
+            + " where 1 = 1";
+
+    private static final String SELECT_ARCHIVED = "select a.request_id, a.document from archived_test_request a where 1 = 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TestRequestArchive testRequestArchive;
+
+
+    public void export(LocalDate from, LocalDate to, RequestStatus status, Integer pinCode, boolean includeArchived,
+                       ExportFormat format, OutputStream outputStream) throws IOException {
+
+        StringBuilder sql = new StringBuilder(SELECT);
+        List<Object> parameters = new ArrayList<>();
+        appendCreated(sql, parameters, "t", from, to);
+        if (status != null) {
+            sql.append(" and t.status = ?");
+            parameters.add(status.ordinal());
+        }
+        if (pinCode != null) {
+            sql.append(" and t.pin_code = ?");
+            parameters.add(pinCode);
+        }
+        sql.append(" order by t.request_id");
+
+        try (RowWriter writer = format == ExportFormat.CSV ? new CsvRowWriter(outputStream) : new NdjsonRowWriter(outputStream)) {
+            stream(sql.toString(), parameters, resultSet -> writer.write(toValues(resultSet)));
+
+            if (includeArchived && (status == null || status == RequestStatus.COMPLETED)) {
+                StringBuilder archivedSql = new StringBuilder(SELECT_ARCHIVED);
+                List<Object> archivedParameters = new ArrayList<>();
+                appendCreated(archivedSql, archivedParameters, "a", from, to);
+                archivedSql.append(" order by a.request_id");
+
+                stream(archivedSql.toString(), archivedParameters, resultSet -> {
+                    TestRequest testRequest = decode(resultSet);
+                    if (pinCode == null || pinCode.equals(testRequest.getPinCode()))
+                        writer.write(toValues(testRequest));
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void appendCreated(StringBuilder sql, List<Object> parameters, String alias, LocalDate from, LocalDate to) {
+        if (from != null) {
+            sql.append(" and ").append(alias).append(".created >= ?");
+            parameters.add(Date.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" and ").append(alias).append(".created <= ?");
+            parameters.add(Date.valueOf(to));
+        }
+    }
+
+    private void stream(String sql, List<Object> parameters, RowHandler rowHandler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STREAMING_FETCH_SIZE);
+            for (int i = 0; i < parameters.size(); i++)
+                statement.setObject(i + 1, parameters.get(i));
+            return statement;
+        }, resultSet -> {
+            try {
+                rowHandler.handle(resultSet);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private TestRequest decode(ResultSet resultSet) throws SQLException {
+        ArchivedTestRequest archivedTestRequest = new ArchivedTestRequest();
+        archivedTestRequest.setRequestId(resultSet.getLong(1));
+        archivedTestRequest.setDocument(resultSet.getBytes(2));
+        return testRequestArchive.decode(archivedTestRequest).getTestRequest();
+    }
+
+    private static Object[] toValues(ResultSet resultSet) throws SQLException {
+        return new Object[]{
+                resultSet.getLong(1),
+                dateOf(resultSet, 2),
+                enumOf(resultSet, 3, RequestStatus.values()),
+                resultSet.getString(4),
+                resultSet.getObject(5),
+                enumOf(resultSet, 6, Gender.values()),
+                resultSet.getString(7),
+                resultSet.getString(8),
+                resultSet.getObject(9),
+                resultSet.getString(10),
+                enumOf(resultSet, 11, TestStatus.values()),
+                resultSet.getString(12),
+                resultSet.getString(13),
+                resultSet.getString(14),
+                resultSet.getString(15),
+                resultSet.getObject(16),
+                resultSet.getObject(17),
+                resultSet.getObject(18),
+                resultSet.getBigDecimal(19),
+                resultSet.getObject(20),
+                resultSet.getString(21),
+                dateOf(resultSet, 22),
+                resultSet.getString(23),
+                enumOf(resultSet, 24, DoctorSuggestion.values()),
+                resultSet.getString(25),
+                dateOf(resultSet, 26),
+                resultSet.getString(27)
+        };
+    }
+
+    // same columns as above, from a request decoded from the archive
+    private static Object[] toValues(TestRequest testRequest) {
+        LabResult labResult = testRequest.getLabResult();
+        Consultation consultation = testRequest.getConsultation();
+        return new Object[]{
+                testRequest.getRequestId(),
+                dateOf(testRequest.getCreated()),
+                nameOf(testRequest.getStatus()),
+                testRequest.getName(),
+                testRequest.getAge(),
+                nameOf(testRequest.getGender()),
+                testRequest.getEmail(),
+                testRequest.getPhoneNumber(),
+                testRequest.getPinCode(),
+                testRequest.getAddress(),
+                labResult == null ? null : nameOf(labResult.getResult()),
+                labResult == null ? null : labResult.getBloodPressure(),
+                labResult == null ? null : labResult.getHeartBeat(),
+                labResult == null ? null : labResult.getTemperature(),
+                labResult == null ? null : labResult.getOxygenLevel(),
+                labResult == null ? null : labResult.getSystolic(),
+                labResult == null ? null : labResult.getDiastolic(),
+                labResult == null ? null : labResult.getHeartRate(),
+                labResult == null ? null : labResult.getBodyTemperature(),
+                labResult == null ? null : labResult.getSpo2(),
+                labResult == null ? null : labResult.getComments(),
+                labResult == null ? null : dateOf(labResult.getUpdatedOn()),
+                labResult == null ? null : userNameOf(labResult.getTester()),
+                consultation == null ? null : nameOf(consultation.getSuggestion()),
+                consultation == null ? null : consultation.getComments(),
+                consultation == null ? null : dateOf(consultation.getUpdatedOn()),
+                consultation == null ? null : userNameOf(consultation.getDoctor())
+        };
+    }
+
+    private static String nameOf(Enum<?> value) {
+        return value == null ? null : value.name();
+    }
+
+    private static String dateOf(LocalDate date) {
+        return date == null ? null : date.toString();
+    }
+
+    private static String userNameOf(User user) {
+        return user == null ? null : user.getUserName();
+    }
+
+    // enums are stored by ordinal
+    private static String enumOf(ResultSet resultSet, int column, Enum<?>[] values) throws SQLException {
+        int ordinal = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : values[ordinal].name();
+    }
+
+    private static String dateOf(ResultSet resultSet, int column) throws SQLException {
+        Date date = resultSet.getDate(column);
+        return date == null ? null : date.toLocalDate().toString();
+    }
+
+
+    private interface RowHandler {
+        void handle(ResultSet resultSet) throws SQLException, IOException;
+    }
+
+    private interface RowWriter extends Closeable {
+        void write(Object[] values) throws IOException;
+    }
+
+    private class NdjsonRowWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(OutputStream outputStream) throws IOException {
+            generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++)
+                generator.writeObjectField(COLUMNS[i], values[i]);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        CsvRowWriter(OutputStream outputStream) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            write(COLUMNS);
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                if (values[i] != null)
+                    writer.write(escape(values[i].toString()));
+            }
+            writer.write('\n');
+        }
+
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+                return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+}
@@ -2,11 +2,14 @@ package org.upgrad.upstac.testrequests.flow;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.upgrad.upstac.testrequests.RequestStatus;
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.time.LocalDate;
 
 @Data
@@ -20,8 +23,10 @@ public class TestRequestFlow {
 
 
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     private TestRequest request;
 
     private RequestStatus fromStatus ;
@@ -32,6 +37,10 @@ public class TestRequestFlow {
 
     private LocalDate happenedOn=LocalDate.now();
 
+    // millisecond precision so stage durations can be measured, rows written before it existed are back-filled from happenedOn
+    @Column(columnDefinition = "datetime(3)")
+    private Instant happenedAt=Instant.now();
+
 
 
 
@@ -0,0 +1,38 @@
+package org.upgrad.upstac.testrequests.flow;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.upgrad.upstac.exception.AppException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
+
+
+@RestController
+@RequestMapping("/api/government/timeline")
+public class TestRequestFlowController {
+
+
+    @Autowired
+    private TestRequestFlowService testRequestFlowService;
+
+
+    // ?ids=1,2,3 returns the flows of each request ordered by happenedAt
+    @GetMapping
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public Map<Long, List<TestRequestFlow>> getTimeline(@RequestParam List<Long> ids) {
+        try {
+            return testRequestFlowService.findByRequestIds(ids);
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+}
@@ -1,8 +1,11 @@
 package org.upgrad.upstac.testrequests.flow;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.upgrad.upstac.testrequests.TestRequest;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,5 +25,10 @@ public interface TestRequestFlowRepository extends JpaRepository<TestRequestFlow
 
     List<TestRequestFlow> findByRequest(TestRequest request);
 
+    // Each row is the request id and its flow, so grouping never initializes the lazy request
+    @Query("select f.request.requestId, f from TestRequestFlow f left join fetch f.changedBy" +
+            " where f.request.requestId in :ids order by f.request.requestId, f.happenedAt, f.id")
+    List<Object[]> findAllByRequestIdIn(@Param("ids") Collection<Long> ids);
+
 
 }
@@ -1,31 +1,78 @@
 package org.upgrad.upstac.testrequests.flow;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
+import org.upgrad.upstac.exception.AppException;
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
 import org.upgrad.upstac.users.User;
 
-import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Validated
 public class TestRequestFlowService {
 
+    public static final int MAX_TIMELINE_SIZE = 500;
+
     @Autowired
     private TestRequestFlowRepository testRequestFlowRepository;
 
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestRequestArchive testRequestArchive;
+
+    @Value("${app.maintenance.flow-happened-at-back-fill:false}")
+    private boolean backFillEnabled;
+
+    private static Logger logger = LoggerFactory.getLogger(TestRequestFlowService.class);
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (backFillEnabled)
+            backFill();
+    }
+
+    /**
+     * Flows written before happened_at existed only know their day, they are placed at its start
+     */
+    public void backFill() {
+        int updated = jdbcTemplate.update("update test_request_flow set happened_at = happened_on where happened_at is null and happened_on is not null");
+        if (updated > 0)
+            logger.info("back-filled happened_at of " + updated + " test request flows");
+    }
 
-    @Transactional
+    // The flow row is written by TestRequestFlowWriter once the transition commits
     public void log(TestRequest testRequest, RequestStatus from, RequestStatus to, User changedBy) {
-        TestRequestFlow testRequestFlow = new TestRequestFlow();
-        testRequestFlow.setChangedBy(changedBy);
-        testRequestFlow.setRequest(testRequest);
-        testRequestFlow.setFromStatus(from);
-        testRequestFlow.setToStatus(to);
-        testRequestFlowRepository.save(testRequestFlow);
+        log(Collections.singletonList(testRequest), from, to, changedBy);
+    }
+
+    public void log(List<TestRequest> testRequests, RequestStatus from, RequestStatus to, User changedBy) {
+        List<Long> requestIds = testRequests.stream().map(TestRequest::getRequestId).collect(Collectors.toList());
+        applicationEventPublisher.publishEvent(new StatusChanged(requestIds, from, to, changedBy.getId()));
     }
 
 
@@ -35,4 +82,34 @@ public class TestRequestFlowService {
         return testRequestFlowRepository.findByRequest(testRequest);
     }
 
+    /**
+     * The flows of all given requests with one IN query, keyed by request id in the order asked for. Requests without
+     * flows are looked up in the archive with a second one, a request found in neither maps to an empty list
+     */
+    public Map<Long, List<TestRequestFlow>> findByRequestIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty())
+            throw new AppException("No IDs to look up");
+
+        Set<Long> requestIds = new LinkedHashSet<>(ids);
+        requestIds.remove(null);
+        if (requestIds.size() > MAX_TIMELINE_SIZE)
+            throw new AppException("Cannot look up more than " + MAX_TIMELINE_SIZE + " requests at once");
+
+        Map<Long, List<TestRequestFlow>> timeline = new LinkedHashMap<>();
+        for (Long requestId : requestIds)
+            timeline.put(requestId, new ArrayList<>());
+
+        for (Object[] row : testRequestFlowRepository.findAllByRequestIdIn(requestIds))
+            timeline.get((Long) row[0]).add((TestRequestFlow) row[1]);
+
+        List<Long> withoutFlows = timeline.entrySet().stream()
+                .filter(entry -> entry.getValue().isEmpty())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        if (withoutFlows.isEmpty() == false)
+            testRequestArchive.findFlows(withoutFlows).forEach(timeline::put);
+
+        return timeline;
+    }
+
 }
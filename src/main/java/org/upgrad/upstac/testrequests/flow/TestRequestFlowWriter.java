@@ -0,0 +1,195 @@
+package org.upgrad.upstac.testrequests.flow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists the flow rows of committed status changes in micro-batches: rows wait in a bounded buffer and are written
+ * with one JDBC batch every flush interval, or as soon as a full batch is waiting. A batch that fails is kept and
+ * written before any newer rows, retried with a doubling delay; one refused by the database for good is written row
+ * by row instead, and only the rows that can never be written are logged and dropped. When the buffer is full the
+ * publishing thread writes the pending rows itself, or waits a bounded time while the database is unavailable and
+ * then logs and drops the row. Pending rows are written on shutdown; a crash can lose at most the rows still buffered.
+ */
+@Component
+public class TestRequestFlowWriter {
+
+    static final int BUFFER_CAPACITY = 10000;
+    static final int BATCH_SIZE = 500;
+    static final long MAX_RETRY_DELAY_MILLIS = 30000;
+
+    private static final String INSERT_FLOW = "insert into test_request_flow"
+            + " (request_request_id, from_status, to_status, changed_by_id, happened_on, happened_at) values (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // a batch is written all or nothing, so after a failure it can be written again row by row without duplicates
+    private TransactionTemplate requiresNew;
+
+    @Value("${app.flow.flush-interval-millis:200}")
+    private long flushIntervalMillis;
+
+    @Value("${app.flow.max-enqueue-wait-millis:2000}")
+    private long maxEnqueueWaitMillis;
+
+    private final BlockingQueue<Object[]> pending = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // the batch that could not be written, it goes out before anything still pending
+    private List<Object[]> failed = new ArrayList<>();
+
+    private long retryDelayMillis;
+
+    private long retryAt;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "flow-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(TestRequestFlowWriter.class);
+
+
+    @PostConstruct
+    public void start() {
+        // rows may be published after a commit, while that transaction is still bound to the thread
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        // a creation has no flow row, the request itself records it
+        if (event.isCreation())
+            return;
+
+        Date happenedOn = Date.valueOf(event.getHappenedAt().atZone(ZoneId.systemDefault()).toLocalDate());
+        Timestamp happenedAt = Timestamp.from(event.getHappenedAt());
+        for (Long requestId : event.getRequestIds()) {
+            Object[] row = {requestId, event.getFrom().ordinal(), event.getTo().ordinal(), event.getChangedById(), happenedOn, happenedAt};
+            enqueue(row);
+        }
+
+        if (pending.size() >= BATCH_SIZE && flushRequested.compareAndSet(false, true))
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+    }
+
+    private void enqueue(Object[] row) {
+        long giveUpAt = System.currentTimeMillis() + maxEnqueueWaitMillis;
+        while (pending.offer(row) == false) {
+            flush();
+            long remaining = giveUpAt - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.error("dropping test request flow " + Arrays.toString(row) + ", the buffer stayed full for " + maxEnqueueWaitMillis + " ms");
+                return;
+            }
+            try {
+                // still full, the database is down: hold the publisher back for a while before dropping the row
+                if (pending.offer(row, Math.min(remaining, Math.max(flushIntervalMillis, 1)), TimeUnit.MILLISECONDS))
+                    return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("dropping test request flow " + Arrays.toString(row) + ", interrupted while the buffer was full");
+                return;
+            }
+        }
+    }
+
+    public void flush() {
+        flush(false);
+    }
+
+    private synchronized void flush(boolean ignoreRetryDelay) {
+        if (failed.isEmpty() == false) {
+            if (ignoreRetryDelay == false && System.currentTimeMillis() < retryAt)
+                return;
+            failed = write(failed);
+            if (failed.isEmpty() == false)
+                return;
+        }
+
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        while (pending.drainTo(batch, BATCH_SIZE) > 0) {
+            failed = write(batch);
+            if (failed.isEmpty() == false)
+                return;
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    // Returns the rows still to be written, none once the batch went through
+    private List<Object[]> write(List<Object[]> batch) {
+        try {
+            requiresNew.execute(status -> jdbcTemplate.batchUpdate(INSERT_FLOW, batch));
+            retryDelayMillis = 0;
+            return Collections.emptyList();
+        } catch (NonTransientDataAccessException e) {
+            // retrying would fail the same way, find the rows at fault instead
+            log.warn("could not write " + batch.size() + " test request flows as a batch, writing them one by one", e);
+            return writeOneByOne(batch);
+        } catch (RuntimeException e) {
+            return retryLater(batch, e);
+        }
+    }
+
+    private List<Object[]> writeOneByOne(List<Object[]> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                jdbcTemplate.update(INSERT_FLOW, batch.get(i));
+            } catch (NonTransientDataAccessException e) {
+                log.error("dropping test request flow " + Arrays.toString(batch.get(i)) + " that cannot be written", e);
+            } catch (RuntimeException e) {
+                return retryLater(new ArrayList<>(batch.subList(i, batch.size())), e);
+            }
+        }
+        retryDelayMillis = 0;
+        return Collections.emptyList();
+    }
+
+    private List<Object[]> retryLater(List<Object[]> rows, RuntimeException e) {
+        retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, Math.max(flushIntervalMillis, retryDelayMillis * 2));
+        retryAt = System.currentTimeMillis() + retryDelayMillis;
+        log.error("could not write " + rows.size() + " test request flows, retrying in " + retryDelayMillis + " ms", e);
+        return rows;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush(true);
+    }
+}
@@ -0,0 +1,36 @@
+package org.upgrad.upstac.testrequests.history;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * One row per request a user created, holding just what their history shows. Written in the same transaction as the
+ * change it reflects, and kept when the request itself is archived.
+ */
+@Data
+@Entity
+@Table(name = "test_request_history", indexes = @Index(name = "idx_test_request_history_created_by", columnList = "createdById,requestId"))
+public class TestRequestHistoryEntry {
+
+    @Id
+    private Long requestId;
+
+    @JsonIgnore
+    @Column(nullable = false)
+    private Long createdById;
+
+    private RequestStatus status;
+
+    private LocalDate created;
+
+    private TestStatus result;
+
+    private DoctorSuggestion suggestion;
+
+}
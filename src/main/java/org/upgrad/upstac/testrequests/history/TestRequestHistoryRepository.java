@@ -0,0 +1,13 @@
+package org.upgrad.upstac.testrequests.history;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+
+public interface TestRequestHistoryRepository extends JpaRepository<TestRequestHistoryEntry,Long> {
+
+
+    List<TestRequestHistoryEntry> findByCreatedByIdOrderByRequestIdAsc(Long createdById);
+
+}
@@ -0,0 +1,134 @@
+package org.upgrad.upstac.testrequests.history;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.users.User;
+
+import java.sql.Date;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.upgrad.upstac.shared.TransactionHooks.afterCommit;
+
+/**
+ * Serves a user's request history from test_request_history through a bounded cache, so the call is one map lookup
+ * when cached and one indexed query when not. Rows are maintained inside the transaction of each change, and the
+ * owner's cached history is evicted once that change commits.
+ */
+@Service
+public class TestRequestHistoryService {
+
+    @Autowired
+    private TestRequestHistoryRepository testRequestHistoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.maintenance.history-back-fill:false}")
+    private boolean backFillEnabled;
+
+    private final Cache<Long, List<TestRequestHistoryEntry>> historyByUserId;
+
+    private static Logger logger = LoggerFactory.getLogger(TestRequestHistoryService.class);
+
+
+    public TestRequestHistoryService(@Value("${app.cache.history.maximum-size:1000}") long maximumSize,
+                                     @Value("${app.cache.history.expire-after-write-seconds:600}") long expireAfterWriteSeconds) {
+
+        historyByUserId = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (backFillEnabled)
+            backFill();
+    }
+
+    /**
+     * Adds rows for requests created before the table existed, archived requests included
+     */
+    public void backFill() {
+        int inserted = jdbcTemplate.update("insert into test_request_history (request_id, created_by_id, status, created, result, suggestion)"
+                + " select t.request_id, t.created_by_id, t.status, t.created, l.result, c.suggestion from test_request t"
+                + " left join lab_result l on l.request_request_id = t.request_id"
+                + " left join consultation c on c.request_request_id = t.request_id"
+                + " where t.created_by_id is not null"
+                + " and not exists (select 1 from test_request_history h where h.request_id = t.request_id)");
+        inserted += jdbcTemplate.update("insert into test_request_history (request_id, created_by_id, status, created, result, suggestion)"
+                + " select a.request_id, a.created_by_id, ?, a.created, a.result, a.suggestion from archived_test_request a"
+                + " where a.created_by_id is not null"
+                + " and not exists (select 1 from test_request_history h where h.request_id = a.request_id)", RequestStatus.COMPLETED.ordinal());
+        if (inserted > 0)
+            logger.info("back-filled " + inserted + " test request history rows");
+    }
+
+
+    public List<TestRequestHistoryEntry> findByUser(User user) {
+        return historyByUserId.get(user.getId(), userId -> Collections.unmodifiableList(testRequestHistoryRepository.findByCreatedByIdOrderByRequestIdAsc(userId)));
+    }
+
+
+    // a plain listener on purpose, it runs in the transaction publishing the change so the row can never lag behind it
+    @EventListener
+    public void onStatusChanged(StatusChanged event) {
+        if (event.isCreation()) {
+            Date created = Date.valueOf(event.getHappenedAt().atZone(ZoneId.systemDefault()).toLocalDate());
+            List<Object[]> rows = new ArrayList<>();
+            for (Long requestId : event.getRequestIds())
+                rows.add(new Object[]{requestId, event.getChangedById(), event.getTo().ordinal(), created});
+
+            jdbcTemplate.batchUpdate("insert into test_request_history (request_id, created_by_id, status, created) values (?, ?, ?, ?)", rows);
+            evictAfterCommit(Collections.singletonList(event.getChangedById()));
+            return;
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(event.getRequestIds().size(), "?"));
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(event.getTo().ordinal());
+        parameters.addAll(event.getRequestIds());
+
+        jdbcTemplate.update("update test_request_history set status = ? where request_id in (" + placeholders + ")", parameters.toArray());
+        evictAfterCommit(jdbcTemplate.queryForList("select distinct created_by_id from test_request_history where request_id in (" + placeholders + ")",
+                Long.class, event.getRequestIds().toArray()));
+    }
+
+    public void recordLabResult(TestRequest testRequest, TestStatus result) {
+        jdbcTemplate.update("update test_request_history set result = ? where request_id = ?", result == null ? null : result.ordinal(), testRequest.getRequestId());
+        evictAfterCommit(testRequest);
+    }
+
+    public void recordSuggestion(TestRequest testRequest, DoctorSuggestion suggestion) {
+        jdbcTemplate.update("update test_request_history set suggestion = ? where request_id = ?", suggestion == null ? null : suggestion.ordinal(), testRequest.getRequestId());
+        evictAfterCommit(testRequest);
+    }
+
+    private void evictAfterCommit(TestRequest testRequest) {
+        if (testRequest.getCreatedBy() != null)
+            evictAfterCommit(Collections.singletonList(testRequest.getCreatedBy().getId()));
+    }
+
+    private void evictAfterCommit(List<Long> userIds) {
+        afterCommit(() -> historyByUserId.invalidateAll(userIds));
+    }
+
+}
@@ -1,8 +1,11 @@
 package org.upgrad.upstac.testrequests.lab;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
 
 @Data
 public class CreateLabResult {
@@ -18,4 +21,56 @@ public class CreateLabResult {
     private String comments;
     @NotNull
     private TestStatus result;
+
+
+    // The vitals stay free text for the client, but each one must parse into its typed column
+
+    @JsonIgnore
+    @AssertTrue(message = "bloodPressure must be systolic/diastolic, e.g. 120/80")
+    public boolean isBloodPressureReadable() {
+        return bloodPressure == null || (getSystolic() != null && getDiastolic() != null);
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "heartBeat must be beats per minute between " + LabVitals.MIN_HEART_RATE + " and " + LabVitals.MAX_HEART_RATE)
+    public boolean isHeartBeatReadable() {
+        return heartBeat == null || getHeartRate() != null;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "temperature must be a body temperature in Celsius or Fahrenheit")
+    public boolean isTemperatureReadable() {
+        return temperature == null || getBodyTemperature() != null;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "oxygenLevel must be an SpO2 percentage between " + LabVitals.MIN_SPO2 + " and " + LabVitals.MAX_SPO2)
+    public boolean isOxygenLevelReadable() {
+        return oxygenLevel == null || oxygenLevel.trim().isEmpty() || getSpo2() != null;
+    }
+
+    @JsonIgnore
+    public Integer getSystolic() {
+        return LabVitals.systolicOf(bloodPressure);
+    }
+
+    @JsonIgnore
+    public Integer getDiastolic() {
+        return LabVitals.diastolicOf(bloodPressure);
+    }
+
+    @JsonIgnore
+    public Integer getHeartRate() {
+        return LabVitals.heartRateOf(heartBeat);
+    }
+
+    @JsonIgnore
+    public BigDecimal getBodyTemperature() {
+        return LabVitals.temperatureOf(temperature);
+    }
+
+    @JsonIgnore
+    public Integer getSpo2() {
+        return LabVitals.spo2Of(oxygenLevel);
+    }
 }
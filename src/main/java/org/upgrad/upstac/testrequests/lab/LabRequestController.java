@@ -4,21 +4,31 @@ package org.upgrad.upstac.testrequests.lab;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.upgrad.upstac.config.security.UserLoggedInService;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.ConflictException;
+import org.upgrad.upstac.shared.ETags;
+import org.upgrad.upstac.testrequests.BulkAssignmentResult;
 import org.upgrad.upstac.testrequests.RequestStatus;
 import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.TestRequestPage;
 import org.upgrad.upstac.testrequests.TestRequestQueryService;
 import org.upgrad.upstac.testrequests.TestRequestUpdateService;
 import org.upgrad.upstac.testrequests.flow.TestRequestFlowService;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueue;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueueFeed;
 import org.upgrad.upstac.users.User;
 
 import javax.validation.ConstraintViolationException;
 import java.util.List;
 
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asBadRequest;
+import static org.upgrad.upstac.exception.UpgradResponseStatusException.asConflict;
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asConstraintViolation;
 
 
@@ -41,11 +51,26 @@ public class LabRequestController {
     @Autowired
     private UserLoggedInService userLoggedInService;
 
+    @Autowired
+    private TestRequestQueueFeed testRequestQueueFeed;
+
 
     @GetMapping("/to-be-tested")
     @PreAuthorize("hasAnyRole('TESTER')")
-    public List<TestRequest> getForTests()  {
-        return testRequestQueryService.findBy(RequestStatus.INITIATED);
+    public TestRequestPage getForTests(@RequestParam(required = false) String continuationToken,
+                                       @RequestParam(required = false) Integer size)  {
+        try {
+            return testRequestQueryService.findBy(RequestStatus.INITIATED, continuationToken, size);
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    // Pushes the requests entering or leaving the queue instead of the client polling the list above
+    @GetMapping(value = "/to-be-tested/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('TESTER')")
+    public SseEmitter subscribeToLabTestQueue() {
+        return testRequestQueueFeed.subscribe(TestRequestQueue.LAB_TEST);
     }
 
     @GetMapping
@@ -61,6 +86,34 @@ public class LabRequestController {
         try {
             User loggedInUser = userLoggedInService.getLoggedInUser();
             return testRequestUpdateService.assignForLabTest(id, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasAnyRole('TESTER')")
+    @PutMapping("/assign")
+    public BulkAssignmentResult assignForLabTest(@RequestBody List<Long> ids) {
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            return testRequestUpdateService.assignForLabTest(ids, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasAnyRole('TESTER')")
+    @PutMapping("/claim")
+    public BulkAssignmentResult claimForLabTest(@RequestParam(required = false) Integer count) {
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            return testRequestUpdateService.claimNextForLabTest(count, loggedInUser);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
         } catch (AppException e) {
             throw asBadRequest(e.getMessage());
         }
@@ -74,6 +127,38 @@ public class LabRequestController {
             return testRequestUpdateService.updateLabTest(id, createLabResult, loggedInUser);
         } catch (ConstraintViolationException e) {
             throw asConstraintViolation(e);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasAnyRole('TESTER')")
+    @PutMapping(value = "/assign/{id}", headers = "If-Match")
+    public ResponseEntity<TestRequest> assignForLabTestIfMatch(@PathVariable Long id, @RequestHeader("If-Match") String ifMatch) {
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            TestRequest testRequest = testRequestUpdateService.assignForLabTest(id, loggedInUser, ETags.toVersion(ifMatch));
+            return ResponseEntity.ok().eTag(ETags.fromVersion(testRequest.getVersion())).body(testRequest);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
+        } catch (AppException e) {
+            throw asBadRequest(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasAnyRole('TESTER')")
+    @PutMapping(value = "/update/{id}", headers = "If-Match")
+    public ResponseEntity<TestRequest> updateLabTestIfMatch(@PathVariable Long id, @RequestHeader("If-Match") String ifMatch, @RequestBody CreateLabResult createLabResult) {
+        try {
+            User loggedInUser = userLoggedInService.getLoggedInUser();
+            TestRequest testRequest = testRequestUpdateService.updateLabTest(id, createLabResult, loggedInUser, ETags.toVersion(ifMatch));
+            return ResponseEntity.ok().eTag(ETags.fromVersion(testRequest.getVersion())).body(testRequest);
+        } catch (ConstraintViolationException e) {
+            throw asConstraintViolation(e);
+        } catch (ConflictException e) {
+            throw asConflict(e.getMessage());
         } catch (AppException e) {
             throw asBadRequest(e.getMessage());
         }
@@ -7,10 +7,12 @@ import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
 
 import javax.persistence.*;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_lab_result_result_spo2", columnList = "result,spo2"))
 public class LabResult {
 
 
@@ -18,6 +20,10 @@ public class LabResult {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long resultId;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+
     @OneToOne(fetch = FetchType.LAZY)
     @JsonIgnore
     @ToString.Exclude
@@ -29,6 +35,14 @@ public class LabResult {
     private String oxygenLevel;
     private String comments;
     private TestStatus result;
+
+    // parsed from the strings above so vitals can be filtered and compared in queries
+    private Integer systolic;
+    private Integer diastolic;
+    private Integer heartRate;
+    @Column(precision = 4, scale = 1)
+    private BigDecimal bodyTemperature;
+    private Integer spo2;
     private LocalDate updatedOn;
 
     @ManyToOne
@@ -1,6 +1,7 @@
 package org.upgrad.upstac.testrequests.lab;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
 
@@ -25,5 +26,11 @@ public interface LabResultRepository extends JpaRepository<LabResult,Long> {
     Optional<LabResult> findByTesterAndRequest(User user,TestRequest testRequest);
     Optional<LabResult> findByRequest(TestRequest request);
 
+    // served by the (result, spo2) index, e.g. all POSITIVE results below 92% SpO2
+    List<LabResult> findByResultAndSpo2LessThanOrderBySpo2Asc(TestStatus result, Integer spo2);
+
+    @Query("select l.result, count(l) from LabResult l where l.result is not null and l.request is not null group by l.result")
+    List<Object[]> countGroupByResult();
+
 
 }
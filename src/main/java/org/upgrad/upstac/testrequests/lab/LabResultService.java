@@ -3,13 +3,16 @@ package org.upgrad.upstac.testrequests.lab;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
+import org.upgrad.upstac.exception.AppException;
 import org.upgrad.upstac.testrequests.TestRequest;
 import org.upgrad.upstac.users.User;
 
 import javax.transaction.Transactional;
 import java.time.LocalDate;
+import java.util.List;
 
 @Service
 @Validated
@@ -18,6 +21,9 @@ public class LabResultService {
     @Autowired
     private LabResultRepository labResultRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
 
     private static Logger logger = LoggerFactory.getLogger(LabResultService.class);
 
@@ -41,9 +47,26 @@ public class LabResultService {
         return createLabResult(tester, testRequest);
     }
 
+    /**
+     * Inserts the lab results for all requests as one JDBC batch, identity ids keep Hibernate from batching these itself
+     */
+    public void assignForLabTest(List<TestRequest> testRequests, User tester) {
+        jdbcTemplate.batchUpdate("insert into lab_result (request_request_id, tester_id) values (?, ?)",
+                testRequests,
+                testRequests.size(),
+                (statement, testRequest) -> {
+                    statement.setLong(1, testRequest.getRequestId());
+                    statement.setLong(2, tester.getId());
+                });
+    }
+
 
+    /**
+     * Fills in the row assigned to the tester; it is managed by the caller's transaction, so the changes are written
+     * with one dirty-checked update when that flushes
+     */
     public LabResult updateLabTest(TestRequest testRequest, CreateLabResult createLabResult) {
-        LabResult labResult = new LabResult();
+        LabResult labResult = labResultRepository.findByRequest(testRequest).orElseThrow(() -> new AppException("Invalid ID or State"));
 
         labResult.setBloodPressure(createLabResult.getBloodPressure());
         labResult.setComments(createLabResult.getComments());
@@ -51,9 +74,14 @@ public class LabResultService {
         labResult.setOxygenLevel(createLabResult.getOxygenLevel());
         labResult.setTemperature(createLabResult.getTemperature());
         labResult.setResult(createLabResult.getResult());
+        labResult.setSystolic(createLabResult.getSystolic());
+        labResult.setDiastolic(createLabResult.getDiastolic());
+        labResult.setHeartRate(createLabResult.getHeartRate());
+        labResult.setBodyTemperature(createLabResult.getBodyTemperature());
+        labResult.setSpo2(createLabResult.getSpo2());
         labResult.setUpdatedOn(LocalDate.now());
 
-        return this.saveLabResult(labResult);
+        return labResult;
     }
 
 }
@@ -0,0 +1,89 @@
+package org.upgrad.upstac.testrequests.lab;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the vitals testers type in ("120/80 mmHg", "72 bpm", "98.6 F", "96%") into numbers. Every method returns null
+ * for input it cannot read or that is outside the range a living patient can have, callers decide whether that is an
+ * error.
+ */
+public class LabVitals {
+
+    public static final int MIN_SYSTOLIC = 50;
+    public static final int MAX_SYSTOLIC = 260;
+    public static final int MIN_DIASTOLIC = 20;
+    public static final int MAX_DIASTOLIC = 160;
+    public static final int MIN_HEART_RATE = 20;
+    public static final int MAX_HEART_RATE = 250;
+    public static final BigDecimal MIN_TEMPERATURE = new BigDecimal("30.0");
+    public static final BigDecimal MAX_TEMPERATURE = new BigDecimal("45.0");
+    public static final int MIN_SPO2 = 40;
+    public static final int MAX_SPO2 = 100;
+
+    // above this a temperature can only be in Fahrenheit
+    private static final BigDecimal FAHRENHEIT_ABOVE = new BigDecimal("50");
+
+    private static final Pattern BLOOD_PRESSURE = Pattern.compile("^\\s*(\\d{2,3})\\s*/\\s*(\\d{2,3})\\s*(mm\\s*hg)?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HEART_RATE = Pattern.compile("^\\s*(\\d{2,3})\\s*(bpm|/\\s*min)?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TEMPERATURE = Pattern.compile("^\\s*(\\d{2,3}(\\.\\d+)?)\\s*(\u00B0)?\\s*([CF])?\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SPO2 = Pattern.compile("^\\s*(\\d{2,3}(\\.\\d+)?)\\s*%?\\s*$");
+
+
+    public static Integer systolicOf(String bloodPressure) {
+        return bloodPressurePart(bloodPressure, 1, MIN_SYSTOLIC, MAX_SYSTOLIC);
+    }
+
+    public static Integer diastolicOf(String bloodPressure) {
+        return bloodPressurePart(bloodPressure, 2, MIN_DIASTOLIC, MAX_DIASTOLIC);
+    }
+
+    private static Integer bloodPressurePart(String bloodPressure, int group, int min, int max) {
+        Matcher matcher = matcherOf(BLOOD_PRESSURE, bloodPressure);
+        if (matcher == null || Integer.parseInt(matcher.group(1)) <= Integer.parseInt(matcher.group(2)))
+            return null;
+        return inRange(Integer.parseInt(matcher.group(group)), min, max);
+    }
+
+    public static Integer heartRateOf(String heartBeat) {
+        Matcher matcher = matcherOf(HEART_RATE, heartBeat);
+        return matcher == null ? null : inRange(Integer.parseInt(matcher.group(1)), MIN_HEART_RATE, MAX_HEART_RATE);
+    }
+
+    // in Celsius with one decimal, a value marked F or too high to be Celsius is converted
+    public static BigDecimal temperatureOf(String temperature) {
+        Matcher matcher = matcherOf(TEMPERATURE, temperature);
+        if (matcher == null)
+            return null;
+
+        BigDecimal value = new BigDecimal(matcher.group(1));
+        boolean fahrenheit = matcher.group(4) != null
+                ? matcher.group(4).equalsIgnoreCase("F")
+                : value.compareTo(FAHRENHEIT_ABOVE) > 0;
+        if (fahrenheit)
+            value = value.subtract(new BigDecimal(32)).multiply(new BigDecimal(5)).divide(new BigDecimal(9), 1, RoundingMode.HALF_UP);
+
+        value = value.setScale(1, RoundingMode.HALF_UP);
+        return value.compareTo(MIN_TEMPERATURE) < 0 || value.compareTo(MAX_TEMPERATURE) > 0 ? null : value;
+    }
+
+    public static Integer spo2Of(String oxygenLevel) {
+        Matcher matcher = matcherOf(SPO2, oxygenLevel);
+        if (matcher == null)
+            return null;
+        return inRange(new BigDecimal(matcher.group(1)).setScale(0, RoundingMode.HALF_UP).intValue(), MIN_SPO2, MAX_SPO2);
+    }
+
+    private static Matcher matcherOf(Pattern pattern, String input) {
+        if (input == null)
+            return null;
+        Matcher matcher = pattern.matcher(input);
+        return matcher.matches() ? matcher : null;
+    }
+
+    private static Integer inRange(int value, int min, int max) {
+        return value < min || value > max ? null : value;
+    }
+}
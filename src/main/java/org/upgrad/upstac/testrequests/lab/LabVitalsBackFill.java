@@ -0,0 +1,76 @@
+package org.upgrad.upstac.testrequests.lab;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the typed vitals columns of lab results recorded before they existed, parsing the free-text vitals in Java
+ * batch by batch. Values that cannot be read are left null, their text is still there; since those rows would be read
+ * again on every run this is a one-off, enabled for a single startup of one instance after the columns are added.
+ */
+@Component
+public class LabVitalsBackFill {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final String SELECT_UNPARSED = "select result_id, blood_pressure, heart_beat, temperature, oxygen_level from lab_result"
+            + " where result_id > ? and systolic is null and diastolic is null and heart_rate is null and body_temperature is null and spo2 is null"
+            + " and (blood_pressure is not null or heart_beat is not null or temperature is not null or oxygen_level is not null)"
+            + " order by result_id limit " + BATCH_SIZE;
+
+    private static final String UPDATE_VITALS = "update lab_result set systolic = ?, diastolic = ?, heart_rate = ?, body_temperature = ?, spo2 = ? where result_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.maintenance.lab-vitals-back-fill:false}")
+    private boolean enabled;
+
+    private static Logger logger = LoggerFactory.getLogger(LabVitalsBackFill.class);
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled)
+            backFill();
+    }
+
+    public void backFill() {
+        long after = 0;
+        int updated = 0;
+        List<Object[]> batch;
+        do {
+            List<Object[]> rows = new ArrayList<>();
+            batch = jdbcTemplate.query(SELECT_UNPARSED, (resultSet, rowNumber) -> new Object[]{
+                    resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), resultSet.getString(4), resultSet.getString(5)
+            }, after);
+
+            for (Object[] row : batch) {
+                after = (Long) row[0];
+                String bloodPressure = (String) row[1];
+                Object[] vitals = {LabVitals.systolicOf(bloodPressure), LabVitals.diastolicOf(bloodPressure),
+                        LabVitals.heartRateOf((String) row[2]), LabVitals.temperatureOf((String) row[3]), LabVitals.spo2Of((String) row[4]), row[0]};
+                if (vitals[0] != null || vitals[2] != null || vitals[3] != null || vitals[4] != null)
+                    rows.add(vitals);
+            }
+
+            if (rows.isEmpty() == false) {
+                jdbcTemplate.batchUpdate(UPDATE_VITALS, rows, new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DECIMAL, Types.INTEGER, Types.BIGINT});
+                updated += rows.size();
+            }
+        } while (batch.size() == BATCH_SIZE);
+
+        if (updated > 0)
+            logger.info("back-filled typed vitals of " + updated + " lab results");
+    }
+}
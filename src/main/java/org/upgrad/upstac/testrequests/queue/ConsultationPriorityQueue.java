@@ -0,0 +1,168 @@
+package org.upgrad.upstac.testrequests.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequest;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.lab.LabResult;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static org.upgrad.upstac.shared.TransactionHooks.afterCommit;
+
+/**
+ * Requests awaiting consultation ordered by urgency. A request is ranked by the time its lab test completed, moved
+ * earlier by a fixed amount for a positive result, low oxygen and old age; so the sickest patients come first while
+ * a request that has waited long enough still overtakes newer urgent ones. The rank never changes while waiting, which
+ * keeps the queue a sorted set: adding, removing and taking the top K are all logarithmic.
+ */
+@Component
+public class ConsultationPriorityQueue {
+
+    static final long POSITIVE_ADVANCE_MILLIS = Duration.ofHours(6).toMillis();
+    static final long LOW_SPO2_ADVANCE_MILLIS = Duration.ofHours(6).toMillis();
+    static final long CRITICAL_SPO2_ADVANCE_MILLIS = Duration.ofHours(12).toMillis();
+    static final long ELDERLY_ADVANCE_MILLIS = Duration.ofHours(3).toMillis();
+
+    static final int LOW_SPO2 = 94;
+    static final int CRITICAL_SPO2 = 90;
+    static final int ELDERLY_AGE = 60;
+
+    private static final String SEED_WAITING = "select t.request_id, t.age, l.result, l.spo2, max(f.happened_at), l.updated_on from test_request t"
+            + " join lab_result l on l.request_request_id = t.request_id"
+            + " left join test_request_flow f on f.request_request_id = t.request_id and f.to_status = ?"
+            + " where t.status = ? group by t.request_id, t.age, l.result, l.spo2, l.updated_on";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final Logger log = LoggerFactory.getLogger(ConsultationPriorityQueue.class);
+
+
+    @PostConstruct
+    public void seed() {
+        int completed = RequestStatus.LAB_TEST_COMPLETED.ordinal();
+        jdbcTemplate.query(SEED_WAITING, resultSet -> {
+            Timestamp happenedAt = resultSet.getTimestamp(5);
+            Date updatedOn = resultSet.getDate(6);
+            Instant completedAt = happenedAt != null ? happenedAt.toInstant()
+                    : updatedOn != null ? updatedOn.toLocalDate().atStartOfDay(ZoneId.systemDefault()).toInstant()
+                    : Instant.now();
+
+            int age = resultSet.getInt(2);
+            Integer ageOrNull = resultSet.wasNull() ? null : age;
+            int result = resultSet.getInt(3);
+            TestStatus testStatus = resultSet.wasNull() ? null : TestStatus.values()[result];
+            int spo2 = resultSet.getInt(4);
+            Integer spo2OrNull = resultSet.wasNull() ? null : spo2;
+
+            add(resultSet.getLong(1), testStatus, spo2OrNull, ageOrNull, completedAt);
+        }, completed, completed);
+        log.info("seeded consultation priority queue with " + entries.size() + " requests");
+    }
+
+
+    // Called by the lab test update, the request only enters the queue once that commits
+    public void add(TestRequest testRequest, LabResult labResult) {
+        Instant completedAt = Instant.now();
+        afterCommit(() -> add(testRequest.getRequestId(), labResult.getResult(), labResult.getSpo2(), testRequest.getAge(), completedAt));
+    }
+
+    void add(Long requestId, TestStatus result, Integer spo2, Integer age, Instant completedAt) {
+        Entry entry = new Entry(requestId, rankOf(result, spo2, age, completedAt));
+        Entry previous = entries.put(requestId, entry);
+        if (previous != null)
+            queue.remove(previous);
+        queue.add(entry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        if (event.getFrom() == RequestStatus.LAB_TEST_COMPLETED)
+            removeAll(event.getRequestIds());
+    }
+
+    public void removeAll(Collection<Long> requestIds) {
+        for (Long requestId : requestIds) {
+            Entry entry = entries.remove(requestId);
+            if (entry != null)
+                queue.remove(entry);
+        }
+    }
+
+    public List<Long> top(int count) {
+        List<Long> requestIds = new ArrayList<>(count);
+        Iterator<Entry> iterator = queue.iterator();
+        while (requestIds.size() < count && iterator.hasNext())
+            requestIds.add(iterator.next().requestId);
+        return requestIds;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    static long rankOf(TestStatus result, Integer spo2, Integer age, Instant completedAt) {
+        long rank = completedAt.toEpochMilli();
+        if (result == TestStatus.POSITIVE)
+            rank -= POSITIVE_ADVANCE_MILLIS;
+        if (spo2 != null && spo2 < CRITICAL_SPO2)
+            rank -= CRITICAL_SPO2_ADVANCE_MILLIS;
+        else if (spo2 != null && spo2 < LOW_SPO2)
+            rank -= LOW_SPO2_ADVANCE_MILLIS;
+        if (age != null && age >= ELDERLY_AGE)
+            rank -= ELDERLY_ADVANCE_MILLIS;
+        return rank;
+    }
+
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final Long requestId;
+
+        private final long rank;
+
+        Entry(Long requestId, long rank) {
+            this.requestId = requestId;
+            this.rank = rank;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byRank = Long.compare(rank, other.rank);
+            return byRank != 0 ? byRank : requestId.compareTo(other.requestId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return requestId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.upgrad.upstac.testrequests.queue;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class QueueDelta {
+
+    public enum Change {
+        ENTERED, LEFT
+    }
+
+    private TestRequestQueue queue;
+
+    private Change change;
+
+    private List<Long> requestIds;
+
+    public QueueDelta() {
+
+    }
+
+    public QueueDelta(TestRequestQueue queue, Change change, List<Long> requestIds) {
+        this.queue = queue;
+        this.change = change;
+        this.requestIds = requestIds;
+    }
+}
@@ -0,0 +1,30 @@
+package org.upgrad.upstac.testrequests.queue;
+
+import org.upgrad.upstac.testrequests.RequestStatus;
+
+/**
+ * The work queues testers and doctors pick from, each one is simply the requests in a given status
+ */
+public enum TestRequestQueue {
+
+    LAB_TEST(RequestStatus.INITIATED),
+    CONSULTATION(RequestStatus.LAB_TEST_COMPLETED);
+
+    private final RequestStatus status;
+
+    TestRequestQueue(RequestStatus status) {
+        this.status = status;
+    }
+
+    public RequestStatus getStatus() {
+        return status;
+    }
+
+    public static TestRequestQueue of(RequestStatus status) {
+        for (TestRequestQueue queue : values()) {
+            if (queue.status == status)
+                return queue;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,158 @@
+package org.upgrad.upstac.testrequests.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes queue deltas to subscribed testers and doctors as server-sent events. A subscriber is only an open async
+ * response, no thread or query is spent on it until a committed status change touches its queue. Each subscriber has
+ * its own short backlog drained on a small pool of sender threads, so a slow client never holds up the request that
+ * made the change nor the other clients; one that falls too far behind is dropped and reconnects on its own.
+ */
+@Component
+public class TestRequestQueueFeed {
+
+    static final long SUBSCRIPTION_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    // deltas a subscriber may have waiting before it is considered too slow and dropped
+    public static final int MAX_PENDING_DELTAS = 100;
+
+    static final int SENDER_THREADS = 4;
+
+    private final Map<TestRequestQueue, List<Subscriber>> subscribers = new EnumMap<>(TestRequestQueue.class);
+
+    private final AtomicInteger senderCount = new AtomicInteger();
+
+    private final ExecutorService sender = Executors.newFixedThreadPool(SENDER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "queue-feed-" + senderCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Logger log = LoggerFactory.getLogger(TestRequestQueueFeed.class);
+
+
+    public TestRequestQueueFeed() {
+        for (TestRequestQueue queue : TestRequestQueue.values())
+            subscribers.put(queue, new CopyOnWriteArrayList<>());
+    }
+
+    // the client reconnects on its own once the subscription times out
+    public SseEmitter subscribe(TestRequestQueue queue) {
+        SseEmitter emitter = createEmitter();
+        List<Subscriber> queueSubscribers = subscribers.get(queue);
+        Subscriber subscriber = new Subscriber(emitter, queueSubscribers);
+
+        queueSubscribers.add(subscriber);
+        emitter.onCompletion(() -> queueSubscribers.remove(subscriber));
+        emitter.onTimeout(() -> queueSubscribers.remove(subscriber));
+        emitter.onError(error -> queueSubscribers.remove(subscriber));
+        return emitter;
+    }
+
+    protected SseEmitter createEmitter() {
+        return new SseEmitter(SUBSCRIPTION_TIMEOUT_MILLIS);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        TestRequestQueue left = TestRequestQueue.of(event.getFrom());
+        TestRequestQueue entered = TestRequestQueue.of(event.getTo());
+
+        if (hasSubscribers(left))
+            send(new QueueDelta(left, QueueDelta.Change.LEFT, event.getRequestIds()));
+        if (hasSubscribers(entered))
+            send(new QueueDelta(entered, QueueDelta.Change.ENTERED, event.getRequestIds()));
+    }
+
+    private boolean hasSubscribers(TestRequestQueue queue) {
+        return queue != null && subscribers.get(queue).isEmpty() == false;
+    }
+
+    private void send(QueueDelta delta) {
+        for (Subscriber subscriber : subscribers.get(delta.getQueue()))
+            subscriber.enqueue(delta);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.values().forEach(queueSubscribers -> queueSubscribers.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+
+    // One open response with the deltas not yet written to it; at most one sender thread writes to it at a time
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final List<Subscriber> queueSubscribers;
+
+        private final Queue<QueueDelta> pending = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, List<Subscriber> queueSubscribers) {
+            this.emitter = emitter;
+            this.queueSubscribers = queueSubscribers;
+        }
+
+        void enqueue(QueueDelta delta) {
+            if (pendingCount.incrementAndGet() > MAX_PENDING_DELTAS) {
+                log.info("dropping a queue subscriber more than " + MAX_PENDING_DELTAS + " deltas behind");
+                drop(null);
+                return;
+            }
+            pending.add(delta);
+            if (draining.compareAndSet(false, true))
+                sender.execute(this::drain);
+        }
+
+        private void drain() {
+            QueueDelta delta;
+            while ((delta = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                try {
+                    emitter.send(SseEmitter.event().name("delta").data(delta));
+                } catch (IOException | IllegalStateException e) {
+                    // client went away, drop it instead of failing the others
+                    drop(e);
+                    return;
+                }
+            }
+            draining.set(false);
+            // a delta added after the last poll but before the flag was cleared would otherwise wait for the next one
+            if (pending.isEmpty() == false && draining.compareAndSet(false, true))
+                sender.execute(this::drain);
+        }
+
+        private void drop(Exception e) {
+            if (queueSubscribers.remove(this) == false)
+                return;
+            pending.clear();
+            if (e != null)
+                emitter.completeWithError(e);
+            else
+                emitter.complete();
+        }
+    }
+}
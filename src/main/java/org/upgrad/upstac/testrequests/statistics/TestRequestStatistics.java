@@ -0,0 +1,106 @@
+package org.upgrad.upstac.testrequests.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.TestRequestRepository;
+import org.upgrad.upstac.testrequests.archive.ArchivedTestRequestRepository;
+import org.upgrad.upstac.testrequests.consultation.ConsultationRepository;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.lab.LabResultRepository;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.upgrad.upstac.shared.TransactionHooks.afterCommit;
+
+/**
+ * Counts of test requests by status, lab result and doctor suggestion. Seeded once from the database on startup and
+ * kept current by the workflow transitions, so reading them never touches the test_request table.
+ */
+@Component
+public class TestRequestStatistics {
+
+    @Autowired
+    private TestRequestRepository testRequestRepository;
+
+    @Autowired
+    private LabResultRepository labResultRepository;
+
+    @Autowired
+    private ConsultationRepository consultationRepository;
+
+    @Autowired
+    private ArchivedTestRequestRepository archivedTestRequestRepository;
+
+    private final AtomicLongArray byStatus = new AtomicLongArray(RequestStatus.values().length);
+    private final AtomicLongArray byResult = new AtomicLongArray(TestStatus.values().length);
+    private final AtomicLongArray bySuggestion = new AtomicLongArray(DoctorSuggestion.values().length);
+
+    private static final Logger log = LoggerFactory.getLogger(TestRequestStatistics.class);
+
+
+    @PostConstruct
+    public void seed() {
+        seed(byStatus, testRequestRepository.countGroupByStatus());
+        seed(byResult, labResultRepository.countGroupByResult());
+        seed(bySuggestion, consultationRepository.countGroupBySuggestion());
+
+        // archived requests are all COMPLETED and no longer counted by the queries above
+        byStatus.addAndGet(RequestStatus.COMPLETED.ordinal(), archivedTestRequestRepository.count());
+        seed(byResult, archivedTestRequestRepository.countGroupByResult());
+        seed(bySuggestion, archivedTestRequestRepository.countGroupBySuggestion());
+        log.info("seeded test request statistics " + getSummary());
+    }
+
+    private void seed(AtomicLongArray counters, List<Object[]> groupedCounts) {
+        for (Object[] groupedCount : groupedCounts) {
+            if (groupedCount[0] != null)
+                counters.addAndGet(((Enum<?>) groupedCount[0]).ordinal(), ((Number) groupedCount[1]).longValue());
+        }
+    }
+
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        int count = event.getRequestIds().size();
+        if (event.isCreation() == false)
+            byStatus.addAndGet(event.getFrom().ordinal(), -count);
+        byStatus.addAndGet(event.getTo().ordinal(), count);
+    }
+
+    // Counters only move once the change is committed, a rolled back update leaves them untouched
+    public void recordLabResult(TestStatus result) {
+        if (result != null)
+            afterCommit(() -> byResult.incrementAndGet(result.ordinal()));
+    }
+
+    public void recordSuggestion(DoctorSuggestion suggestion) {
+        if (suggestion != null)
+            afterCommit(() -> bySuggestion.incrementAndGet(suggestion.ordinal()));
+    }
+
+
+    public TestRequestStatisticsSummary getSummary() {
+        TestRequestStatisticsSummary summary = new TestRequestStatisticsSummary();
+        summary.setByStatus(toMap(RequestStatus.class, byStatus));
+        summary.setByResult(toMap(TestStatus.class, byResult));
+        summary.setBySuggestion(toMap(DoctorSuggestion.class, bySuggestion));
+        return summary;
+    }
+
+    private <E extends Enum<E>> Map<E, Long> toMap(Class<E> type, AtomicLongArray counters) {
+        Map<E, Long> result = new EnumMap<>(type);
+        for (E value : type.getEnumConstants())
+            result.put(value, counters.get(value.ordinal()));
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package org.upgrad.upstac.testrequests.statistics;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+
+@RestController
+@RequestMapping("/api/government/statistics")
+public class TestRequestStatisticsController {
+
+
+    @Autowired
+    private TestRequestStatistics testRequestStatistics;
+
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public TestRequestStatisticsSummary getStatistics() {
+        return testRequestStatistics.getSummary();
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.upgrad.upstac.testrequests.statistics;
+
+import lombok.Data;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import java.util.Map;
+
+@Data
+public class TestRequestStatisticsSummary {
+
+    private Map<RequestStatus, Long> byStatus;
+
+    private Map<TestStatus, Long> byResult;
+
+    private Map<DoctorSuggestion, Long> bySuggestion;
+}
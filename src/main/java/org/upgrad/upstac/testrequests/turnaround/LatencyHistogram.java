@@ -0,0 +1,71 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations in milliseconds counted in log-linear buckets, the way HdrHistogram does: exact below 32 ms, above that each
+ * power of two is split into 16 buckets, so a percentile is reported within about 6% of the recorded value. Recording is
+ * one atomic increment and the histogram stays at a fixed 688 counters however many values it holds.
+ */
+public class LatencyHistogram {
+
+    static final int LINEAR_BUCKETS = 32;
+    static final int SUB_BUCKETS = 16;
+    static final int MAX_EXPONENT = 45;
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + (MAX_EXPONENT - 4) * SUB_BUCKETS);
+
+
+    public void record(long millis) {
+        counts.incrementAndGet(indexOf(Math.min(Math.max(millis, 0), MAX_VALUE)));
+    }
+
+    public TurnaroundPercentiles getPercentiles() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int index = 0; index < snapshot.length; index++) {
+            snapshot[index] = counts.get(index);
+            total += snapshot[index];
+        }
+
+        TurnaroundPercentiles percentiles = new TurnaroundPercentiles();
+        percentiles.setCount(total);
+        if (total > 0) {
+            percentiles.setP50(valueAt(snapshot, total, 50));
+            percentiles.setP95(valueAt(snapshot, total, 95));
+            percentiles.setP99(valueAt(snapshot, total, 99));
+        }
+        return percentiles;
+    }
+
+    // the highest value of the bucket holding the value at that rank
+    private static long valueAt(long[] snapshot, long total, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int index = 0; index < snapshot.length; index++) {
+            seen += snapshot[index];
+            if (seen >= rank)
+                return highestValueOf(index);
+        }
+        return highestValueOf(snapshot.length - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - 4));
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + (subBucket - SUB_BUCKETS);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < LINEAR_BUCKETS)
+            return index;
+
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << (exponent - 4)) - 1;
+    }
+}
@@ -0,0 +1,141 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.upgrad.upstac.testrequests.RequestStatus;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-stage turnaround percentiles, overall and by pin code, tester and doctor. Each committed status change closes the
+ * stage the request was in and records its duration into a streaming histogram, so reading the percentiles never
+ * queries the flow table. Only the time the open requests entered their current status is kept; it is seeded on startup
+ * with one query, the histograms themselves start empty and cover the transitions since then.
+ */
+@Component
+public class TurnaroundAnalytics {
+
+    // flows written before happened_at existed, and not back-filled yet, only know their day
+    private static final String SEED_IN_FLIGHT = "select t.request_id, t.pin_code, t.created, coalesce(max(f.happened_at), max(f.happened_on)) from test_request t"
+            + " left join test_request_flow f on f.request_request_id = t.request_id"
+            + " where t.status <> ? group by t.request_id, t.pin_code, t.created";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentMap<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<TurnaroundStage, LatencyHistogram> overall = new EnumMap<>(TurnaroundStage.class);
+
+    private final Map<TurnaroundStage, Map<TurnaroundDimension, ConcurrentMap<Long, LatencyHistogram>>> byDimension = new EnumMap<>(TurnaroundStage.class);
+
+    private static final Logger log = LoggerFactory.getLogger(TurnaroundAnalytics.class);
+
+
+    public TurnaroundAnalytics() {
+        for (TurnaroundStage stage : TurnaroundStage.values()) {
+            overall.put(stage, new LatencyHistogram());
+
+            Map<TurnaroundDimension, ConcurrentMap<Long, LatencyHistogram>> dimensions = new EnumMap<>(TurnaroundDimension.class);
+            for (TurnaroundDimension dimension : TurnaroundDimension.values())
+                dimensions.put(dimension, new ConcurrentHashMap<>());
+            byDimension.put(stage, dimensions);
+        }
+    }
+
+    @PostConstruct
+    public void seed() {
+        jdbcTemplate.query(SEED_IN_FLIGHT, resultSet -> {
+            Timestamp happenedAt = resultSet.getTimestamp(4);
+            Instant enteredAt = happenedAt != null
+                    ? happenedAt.toInstant()
+                    : resultSet.getDate(3).toLocalDate().atStartOfDay(ZoneId.systemDefault()).toInstant();
+            int pinCode = resultSet.getInt(2);
+            inFlight.put(resultSet.getLong(1), new InFlight(enteredAt, resultSet.wasNull() ? null : pinCode));
+        }, RequestStatus.COMPLETED.ordinal());
+        log.info("seeded turnaround analytics with " + inFlight.size() + " open requests");
+    }
+
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(StatusChanged event) {
+        Instant happenedAt = event.getHappenedAt();
+
+        if (event.isCreation()) {
+            for (Long requestId : event.getRequestIds()) {
+                Integer pinCode = event.getPinCodes() == null ? null : event.getPinCodes().get(requestId);
+                inFlight.put(requestId, new InFlight(happenedAt, pinCode));
+            }
+            return;
+        }
+
+        TurnaroundStage stage = TurnaroundStage.of(event.getFrom(), event.getTo());
+        for (Long requestId : event.getRequestIds()) {
+            InFlight previous = event.getTo() == RequestStatus.COMPLETED
+                    ? inFlight.remove(requestId)
+                    : inFlight.get(requestId);
+            if (previous == null)
+                continue;
+
+            if (event.getTo() != RequestStatus.COMPLETED)
+                inFlight.put(requestId, new InFlight(happenedAt, previous.pinCode));
+            if (stage != null)
+                record(stage, Duration.between(previous.enteredAt, happenedAt).toMillis(), previous.pinCode, event.getChangedById());
+        }
+    }
+
+    private void record(TurnaroundStage stage, long millis, Integer pinCode, Long changedById) {
+        overall.get(stage).record(millis);
+
+        Map<TurnaroundDimension, ConcurrentMap<Long, LatencyHistogram>> dimensions = byDimension.get(stage);
+        if (pinCode != null)
+            dimensions.get(TurnaroundDimension.PIN_CODE).computeIfAbsent(pinCode.longValue(), key -> new LatencyHistogram()).record(millis);
+        if (changedById != null)
+            dimensions.get(stage.getChangedBy()).computeIfAbsent(changedById, key -> new LatencyHistogram()).record(millis);
+    }
+
+
+    public Map<TurnaroundStage, TurnaroundPercentiles> getSummary() {
+        Map<TurnaroundStage, TurnaroundPercentiles> summary = new EnumMap<>(TurnaroundStage.class);
+        overall.forEach((stage, histogram) -> summary.put(stage, histogram.getPercentiles()));
+        return summary;
+    }
+
+    // keyed by pin code, tester id or doctor id; a stage has no entries for a dimension it is not attributed to
+    public Map<TurnaroundStage, Map<Long, TurnaroundPercentiles>> getSummary(TurnaroundDimension dimension) {
+        Map<TurnaroundStage, Map<Long, TurnaroundPercentiles>> summary = new EnumMap<>(TurnaroundStage.class);
+        byDimension.forEach((stage, dimensions) -> {
+            Map<Long, TurnaroundPercentiles> byKey = new TreeMap<>();
+            dimensions.get(dimension).forEach((key, histogram) -> byKey.put(key, histogram.getPercentiles()));
+            summary.put(stage, byKey);
+        });
+        return summary;
+    }
+
+
+    private static class InFlight {
+
+        private final Instant enteredAt;
+
+        private final Integer pinCode;
+
+        InFlight(Instant enteredAt, Integer pinCode) {
+            this.enteredAt = enteredAt;
+            this.pinCode = pinCode;
+        }
+    }
+}
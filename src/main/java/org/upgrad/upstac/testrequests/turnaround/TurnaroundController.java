@@ -0,0 +1,36 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+@RestController
+@RequestMapping("/api/government/turnaround")
+public class TurnaroundController {
+
+
+    @Autowired
+    private TurnaroundAnalytics turnaroundAnalytics;
+
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public Map<TurnaroundStage, TurnaroundPercentiles> getTurnaround() {
+        return turnaroundAnalytics.getSummary();
+    }
+
+    // PIN_CODE, TESTER or DOCTOR
+    @GetMapping("/{dimension}")
+    @PreAuthorize("hasAnyRole('GOVERNMENT_AUTHORITY')")
+    public Map<TurnaroundStage, Map<Long, TurnaroundPercentiles>> getTurnaround(@PathVariable TurnaroundDimension dimension) {
+        return turnaroundAnalytics.getSummary(dimension);
+    }
+
+}
@@ -0,0 +1,6 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+public enum TurnaroundDimension {
+
+    PIN_CODE, TESTER, DOCTOR
+}
@@ -0,0 +1,18 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+import lombok.Data;
+
+/**
+ * Stage durations in milliseconds, the percentiles are null while nothing was recorded
+ */
+@Data
+public class TurnaroundPercentiles {
+
+    private long count;
+
+    private Long p50;
+
+    private Long p95;
+
+    private Long p99;
+}
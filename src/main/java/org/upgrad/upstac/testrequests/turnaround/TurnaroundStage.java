@@ -0,0 +1,37 @@
+package org.upgrad.upstac.testrequests.turnaround;
+
+import org.upgrad.upstac.testrequests.RequestStatus;
+
+/**
+ * The stages a request passes through, each one ends with the transition out of its status. The tester or doctor
+ * making that transition is who the stage is attributed to
+ */
+public enum TurnaroundStage {
+
+    WAIT_FOR_TESTER(RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, TurnaroundDimension.TESTER),
+    LAB_TEST(RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED, TurnaroundDimension.TESTER),
+    WAIT_FOR_DOCTOR(RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS, TurnaroundDimension.DOCTOR),
+    CONSULTATION(RequestStatus.DIAGNOSIS_IN_PROCESS, RequestStatus.COMPLETED, TurnaroundDimension.DOCTOR);
+
+    private final RequestStatus from;
+    private final RequestStatus to;
+    private final TurnaroundDimension changedBy;
+
+    TurnaroundStage(RequestStatus from, RequestStatus to, TurnaroundDimension changedBy) {
+        this.from = from;
+        this.to = to;
+        this.changedBy = changedBy;
+    }
+
+    public TurnaroundDimension getChangedBy() {
+        return changedBy;
+    }
+
+    public static TurnaroundStage of(RequestStatus from, RequestStatus to) {
+        for (TurnaroundStage stage : values()) {
+            if (stage.from == from && stage.to == to)
+                return stage;
+        }
+        return null;
+    }
+}
@@ -7,10 +7,12 @@ import lombok.ToString;
 import org.upgrad.upstac.users.models.Gender;
 import org.upgrad.upstac.users.models.AccountStatus;
 import org.upgrad.upstac.users.roles.Role;
+import org.upgrad.upstac.users.roles.UserRole;
 
 import javax.persistence.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.Set;
 
 @Entity
@@ -68,33 +70,71 @@ public class User {
     @ManyToMany(fetch = FetchType.EAGER)
     private Set<Role> roles;
 
+    // Computed once from roles, so role checks are a bit test instead of a scan
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    private Integer roleMask;
+
+
+    public void setRoles(Set<Role> roles) {
+        this.roles = roles;
+        this.roleMask = null;
+    }
+
+    public int getRoleMask() {
+        if (null == roleMask)
+            roleMask = UserRole.maskOf(roles);
+        return roleMask;
+    }
 
     public boolean doesRoleIsDoctor() {
 
-        return doesUserHasRole("DOCTOR");
+        return doesUserHasRole(UserRole.DOCTOR);
 
 
     }
 
     public boolean doesUserHasRole(String s) {
-        return roles.stream()
-                .filter(role -> {
-                    return role.getName().equalsIgnoreCase(s);
-                })
-                .findFirst()
-                .isPresent();
+        UserRole userRole = UserRole.fromName(s);
+        return null != userRole && doesUserHasRole(userRole);
+    }
+
+    public boolean doesUserHasRole(UserRole userRole) {
+        return (getRoleMask() & userRole.getMask()) != 0;
     }
 
     public boolean doesRoleIsUser() {
-        return doesUserHasRole("USER");
+        return doesUserHasRole(UserRole.USER);
     }
 
     public boolean doesRoleIsAuthority() {
-        return doesUserHasRole("GOVERNMENT_AUTHORITY");
+        return doesUserHasRole(UserRole.GOVERNMENT_AUTHORITY);
     }
 
     public boolean doesRoleIsTester() {
-        return doesUserHasRole("TESTER");
+        return doesUserHasRole(UserRole.TESTER);
+    }
+
+    // Field by field copy, the roles set is copied but the roles themselves are shared
+    public User copy() {
+        User copy = new User();
+        copy.setId(id);
+        copy.setUserName(userName);
+        copy.setPassword(password);
+        copy.setCreated(created);
+        copy.setDateOfBirth(dateOfBirth);
+        copy.setUpdated(updated);
+        copy.setFirstName(firstName);
+        copy.setStatus(status);
+        copy.setEmail(email);
+        copy.setLastName(lastName);
+        copy.setGender(gender);
+        copy.setPhoneNumber(phoneNumber);
+        copy.setAddress(address);
+        copy.setPinCode(pinCode);
+        copy.setRoles(roles == null ? null : new HashSet<>(roles));
+        return copy;
     }
 
     public Integer getAge(){
@@ -0,0 +1,144 @@
+package org.upgrad.upstac.users;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of users, keyed by id with user name, email and phone number resolving to the id.
+ * Secondary keys are checked against the cached user on read, so after an email or phone change
+ * the old key simply misses instead of having to be tracked and evicted.
+ * The cache keeps its own copy of each user and hands out a fresh copy on every hit, so callers may
+ * change the user they got without other threads seeing it before (or unless) it is saved.
+ */
+@Component
+public class UserCache {
+
+    private final Cache<Long, User> usersById;
+    private final Cache<String, Long> idsByUserName;
+    private final Cache<String, Long> idsByEmail;
+    private final Cache<String, Long> idsByPhoneNumber;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    public UserCache(@Value("${app.cache.user.maximum-size:1000}") long maximumSize,
+                     @Value("${app.cache.user.expire-after-write-seconds:600}") long expireAfterWriteSeconds) {
+
+        usersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        idsByUserName = newKeyCache(maximumSize, expireAfterWriteSeconds);
+        idsByEmail = newKeyCache(maximumSize, expireAfterWriteSeconds);
+        idsByPhoneNumber = newKeyCache(maximumSize, expireAfterWriteSeconds);
+    }
+
+    private static Cache<String, Long> newKeyCache(long maximumSize, long expireAfterWriteSeconds) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+
+    public User findByUserName(String userName, Supplier<User> loader) {
+        return findBy(idsByUserName, userName, User::getUserName, loader);
+    }
+
+    public User findByEmail(String email, Supplier<User> loader) {
+        return findBy(idsByEmail, email, User::getEmail, loader);
+    }
+
+    public User findByPhoneNumber(String phoneNumber, Supplier<User> loader) {
+        return findBy(idsByPhoneNumber, phoneNumber, User::getPhoneNumber, loader);
+    }
+
+    public Optional<User> findById(Long id, Supplier<Optional<User>> loader) {
+        if (id == null)
+            return loader.get();
+
+        User cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached.copy());
+        }
+
+        misses.increment();
+        Optional<User> loaded = loader.get();
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    private User findBy(Cache<String, Long> keyCache, String key, Function<User, String> keyOf, Supplier<User> loader) {
+        if (key == null)
+            return loader.get();
+
+        Long id = keyCache.getIfPresent(key);
+        User cached = null == id ? null : usersById.getIfPresent(id);
+        if (cached != null && Objects.equals(keyOf.apply(cached), key)) {
+            hits.increment();
+            return cached.copy();
+        }
+
+        misses.increment();
+        User loaded = loader.get();
+        if (loaded != null)
+            put(loaded);
+        return loaded;
+    }
+
+
+    public void put(User user) {
+        if (user == null || user.getId() == null)
+            return;
+
+        usersById.put(user.getId(), user.copy());
+        putKey(idsByUserName, user.getUserName(), user.getId());
+        putKey(idsByEmail, user.getEmail(), user.getId());
+        putKey(idsByPhoneNumber, user.getPhoneNumber(), user.getId());
+    }
+
+    private void putKey(Cache<String, Long> keyCache, String key, Long id) {
+        if (key != null)
+            keyCache.put(key, id);
+    }
+
+    public void evict(Long userId) {
+        if (userId != null)
+            usersById.invalidate(userId);
+    }
+
+    public void evictAll() {
+        usersById.invalidateAll();
+        idsByUserName.invalidateAll();
+        idsByEmail.invalidateAll();
+        idsByPhoneNumber.invalidateAll();
+    }
+
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", usersById.estimatedSize());
+        result.put("hitCount", hitCount);
+        result.put("missCount", missCount);
+        result.put("hitRate", hitCount + missCount == 0 ? 1.0 : (double) hitCount / (hitCount + missCount));
+        result.put("evictionCount", usersById.stats().evictionCount());
+        return result;
+    }
+}
@@ -16,6 +16,7 @@ import org.upgrad.upstac.users.models.UpdateUserDetailRequest;
 
 import javax.validation.ConstraintViolationException;
 import java.util.List;
+import java.util.Map;
 
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asConstraintViolation;
 import static org.upgrad.upstac.exception.UpgradResponseStatusException.asForbidden;
@@ -48,6 +49,14 @@ public class UserController {
     }
 
 
+    @PreAuthorize("hasRole('GOVERNMENT_AUTHORITY')")
+    @GetMapping(value = "/cache/stats")
+    public Map<String, Object> getUserCacheStats() {
+
+        return userService.getCacheStats();
+    }
+
+
     @PreAuthorize("hasAnyRole('USER','GOVERNMENT_AUTHORITY','TESTER','DOCTOR')")
     @GetMapping(value = "/details")
     public User getMyDetails() {
@@ -3,13 +3,12 @@ package org.upgrad.upstac.users;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import org.upgrad.upstac.auth.register.RegisterRequest;
+import org.upgrad.upstac.config.security.TokenDenylist;
 import org.upgrad.upstac.exception.AppException;
 import org.upgrad.upstac.users.models.AccountStatus;
 import org.upgrad.upstac.users.models.UpdateUserDetailRequest;
@@ -40,14 +39,19 @@ public class UserService {
     @Autowired
     private BCryptPasswordEncoder bCryptPasswordEncoder;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private TokenDenylist tokenDenylist;
+
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
 
 
-    @Cacheable("user")
     public User findByUserName(String userName) {
 
-        return userRepository.findByUserName(userName);
+        return userCache.findByUserName(userName, () -> userRepository.findByUserName(userName));
 
     }
 
@@ -59,7 +63,7 @@ public class UserService {
 
     public boolean isApprovedUser(String userName) {
 
-        return userRepository.findByUserName(userName).getStatus() == AccountStatus.APPROVED;
+        return findByUserName(userName).getStatus() == AccountStatus.APPROVED;
 
     }
 
@@ -68,12 +72,11 @@ public class UserService {
         if((null != findByUserName(user.getUserName())))
             throw new AppException("Username already exists " + user.getUserName());
 
-        userRepository.findByEmail(user.getEmail()).ifPresent(user1 ->  {
+        if((null != findByEmail(user.getEmail())))
             throw new AppException("User with Same email already exists " + user.getEmail());
-        });
-        userRepository.findByPhoneNumber(user.getPhoneNumber()).ifPresent(user1 ->  {
+
+        if((null != findByPhoneNumber(user.getPhoneNumber())))
             throw new AppException("User with Same Phone number already exists " + user.getPhoneNumber());
-        });
 
     }
 
@@ -89,7 +92,7 @@ public class UserService {
 
 
     public Optional<User> findById(Long id) {
-        return userRepository.findById(id);
+        return userCache.findById(id, () -> userRepository.findById(id));
     }
 
 
@@ -143,9 +146,8 @@ public class UserService {
 
     }
 
-    @CachePut(value = "user")
     public User updateApprovalStatus(Long userId,AccountStatus status) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new AppException("Invalid User ID"));
+        User user = findById(userId).orElseThrow(() -> new AppException("Invalid User ID"));
 
         return updateStatusAndSave(user, status);
 
@@ -153,16 +155,24 @@ public class UserService {
 
     public User updateStatusAndSave(User user, @NotNull AccountStatus status) {
         user.setStatus(status);
-        return saveInDatabase(user);
+        User savedUser = saveInDatabase(user);
+
+        // signed tokens carry the account status, those issued before a rejection or deletion must stop working
+        if (status != AccountStatus.APPROVED)
+            tokenDenylist.revokeAllTokensOf(savedUser.getUserName());
+        return savedUser;
     }
 
-    @CachePut(value = "user")
+    /**
+     * Every write of a user goes through here, so this is where the user cache is kept in sync
+     */
     public User saveInDatabase(User newUser) {
         try{
-            return userRepository.save(newUser);
+            User savedUser = userRepository.save(newUser);
+            userCache.put(savedUser);
+            return savedUser;
         }
         catch (DataIntegrityViolationException e) {
-
             e.printStackTrace();
             throw new AppException("User with same data Already exists, Email/Phone should be unique");
 
@@ -172,8 +182,6 @@ public class UserService {
 
     public User updateUserDetails(User user, UpdateUserDetailRequest updateUserDetailRequest) {
 
-
-
         if(isNotEmptyOrNull(updateUserDetailRequest.getFirstName()))
             user.setFirstName(updateUserDetailRequest.getFirstName());
 
@@ -213,11 +221,15 @@ public class UserService {
     }
 
     public User findByEmail(String email) {
-        return userRepository.findByEmail(email).orElse(null);
+        return userCache.findByEmail(email, () -> userRepository.findByEmail(email).orElse(null));
     }
 
     public User findByPhoneNumber(String email) {
-        return userRepository.findByPhoneNumber(email).orElse(null);
+        return userCache.findByPhoneNumber(email, () -> userRepository.findByPhoneNumber(email).orElse(null));
+    }
+
+    public Map<String, Object> getCacheStats() {
+        return userCache.getStats();
     }
 
 
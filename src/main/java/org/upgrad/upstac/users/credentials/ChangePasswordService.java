@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import org.upgrad.upstac.exception.ForbiddenException;
 import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.UserCache;
 import org.upgrad.upstac.users.UserRepository;
 
 import javax.validation.Valid;
@@ -27,14 +28,17 @@ public class ChangePasswordService {
 
 
     @Autowired
-    public ChangePasswordService(AuthenticationManager authenticationManager, BCryptPasswordEncoder bCryptPasswordEncoder, UserRepository userRepository) {
+    public ChangePasswordService(AuthenticationManager authenticationManager, BCryptPasswordEncoder bCryptPasswordEncoder, UserRepository userRepository, UserCache userCache) {
         this.authenticationManager = authenticationManager;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
         this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
     private UserRepository userRepository;
 
+    private UserCache userCache;
+
 
     private static final Logger log = LoggerFactory.getLogger(ChangePasswordService.class);
 
@@ -51,7 +55,7 @@ public class ChangePasswordService {
 
             String changedPassword = changePasswordRequest.getPassword();
             user.setPassword(bCryptPasswordEncoder.encode(changedPassword));
-            userRepository.save(user);
+            userCache.put(userRepository.save(user));
 
         } catch (Exception e) {
             throw new ForbiddenException(e.getMessage());
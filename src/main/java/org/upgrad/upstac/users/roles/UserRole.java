@@ -1,5 +1,32 @@
 package org.upgrad.upstac.users.roles;
 
+import java.util.Collection;
+
 public enum UserRole {
-    USER, TESTER, DOCTOR,GOVERNMENT_AUTHORITY
+    USER, TESTER, DOCTOR,GOVERNMENT_AUTHORITY;
+
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    public static int maskOf(Collection<Role> roles) {
+        int mask = 0;
+        if (roles == null)
+            return mask;
+
+        for (Role role : roles) {
+            UserRole userRole = fromName(role.getName());
+            if (userRole != null)
+                mask |= userRole.getMask();
+        }
+        return mask;
+    }
+
+    public static UserRole fromName(String name) {
+        for (UserRole userRole : values()) {
+            if (userRole.name().equalsIgnoreCase(name))
+                return userRole;
+        }
+        return null;
+    }
 }
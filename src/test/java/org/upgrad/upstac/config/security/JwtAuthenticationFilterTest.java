@@ -0,0 +1,77 @@
+package org.upgrad.upstac.config.security;
+
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.ServletException;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtAuthenticationFilterTest {
+
+    TokenProvider tokenProvider = new TokenProvider();
+
+    TokenDenylist tokenDenylist = new TokenDenylist();
+
+    UserDetailsService userDetailsService = Mockito.mock(UserDetailsService.class);
+
+    JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter();
+
+    String token;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(tokenProvider, "secretKey", "some-test-secret");
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "tokenProvider", tokenProvider);
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "tokenDenylist", tokenDenylist);
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(jwtAuthenticationFilter, "userLoggedInService", Mockito.mock(UserLoggedInService.class));
+
+        SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_USER");
+        token = tokenProvider.generateToken(new UsernamePasswordAuthenticationToken("alice", null, Collections.singletonList(authority)));
+        Mockito.when(userDetailsService.loadUserByUsername("alice")).thenReturn(new User("alice", "", Collections.singletonList(authority)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void when_token_is_valid_expect_user_authenticated() throws Exception {
+
+        jwtAuthenticationFilter.setSecurityContextAuthenticationIn(new MockHttpServletRequest(), "alice", token);
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName(), is(equalTo("alice")));
+    }
+
+    @Test
+    public void when_token_was_logged_out_expect_it_rejected_without_stateless_claims() {
+
+        tokenDenylist.revokeToken(tokenProvider.getClaimFromToken(token, Claims::getId), "alice", tokenProvider.getExpirationDateFromToken(token));
+
+        assertThrows(ServletException.class, () -> jwtAuthenticationFilter.setSecurityContextAuthenticationIn(new MockHttpServletRequest(), "alice", token));
+        assertThat(SecurityContextHolder.getContext().getAuthentication(), is(nullValue()));
+    }
+
+    @Test
+    public void when_all_tokens_of_user_are_revoked_expect_token_rejected() {
+
+        tokenDenylist.revokeAllTokensOf("alice");
+
+        assertThrows(ServletException.class, () -> jwtAuthenticationFilter.setSecurityContextAuthenticationIn(new MockHttpServletRequest(), "alice", token));
+    }
+}
@@ -0,0 +1,43 @@
+package org.upgrad.upstac.config.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TokenDenylistTest {
+
+    TokenDenylist tokenDenylist = new TokenDenylist();
+
+    @Test
+    public void when_denylist_is_full_of_live_tokens_expect_no_revocation_dropped() {
+
+        Date expiration = new Date(System.currentTimeMillis() + 60000);
+        Date issuedAt = new Date(System.currentTimeMillis() - 1000);
+        for (int index = 0; index < TokenDenylist.MAX_ENTRIES; index++)
+            tokenDenylist.revokeToken("token-" + index, "user-" + index, expiration);
+
+        tokenDenylist.revokeToken("one-more", "mallory", expiration);
+
+        assertThat(tokenDenylist.isRevoked("token-0", "user-0", issuedAt), is(true));
+        assertThat(tokenDenylist.isRevoked("one-more", "mallory", issuedAt), is(true));
+        assertThat(tokenDenylist.isRevoked("other-session", "mallory", issuedAt), is(true));
+        assertThat(tokenDenylist.isRevoked("other-session", "alice", issuedAt), is(false));
+    }
+
+    @Test
+    public void when_denylist_is_full_expect_expired_entries_purged_first() {
+
+        Date expired = new Date(System.currentTimeMillis() - 1000);
+        for (int index = 0; index < TokenDenylist.MAX_ENTRIES; index++)
+            tokenDenylist.revokeToken("token-" + index, "user-" + index, expired);
+
+        tokenDenylist.revokeToken("one-more", "mallory", new Date(System.currentTimeMillis() + 60000));
+
+        assertThat(tokenDenylist.isRevoked("one-more", "mallory", new Date()), is(true));
+        assertThat(tokenDenylist.isRevoked("token-0", "user-0", new Date()), is(false));
+        assertThat(tokenDenylist.isRevoked("other-session", "mallory", new Date(System.currentTimeMillis() - 1000)), is(false));
+    }
+}
@@ -0,0 +1,103 @@
+package org.upgrad.upstac.config.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.UserService;
+import org.upgrad.upstac.users.roles.Role;
+import org.upgrad.upstac.users.roles.UserRole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class UserLoggedInServiceTest {
+
+    UserService userService = Mockito.mock(UserService.class);
+
+    UserLoggedInService userLoggedInService = new UserLoggedInService(userService);
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+
+    @BeforeEach
+    public void setUp() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        org.springframework.security.core.userdetails.User principal = new org.springframework.security.core.userdetails.User("tester", "", Collections.emptyList());
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, Collections.emptyList()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void when_logged_in_user_is_read_twice_expect_one_lookup_per_request() {
+
+        User tester = getUser(UserRole.TESTER);
+        Mockito.when(userService.findByUserName("tester")).thenReturn(tester);
+
+        User first = userLoggedInService.getLoggedInUser();
+        User second = userLoggedInService.getLoggedInUser();
+
+        assertThat(second, is(sameInstance(first)));
+        Mockito.verify(userService, Mockito.times(1)).findByUserName("tester");
+    }
+
+    @Test
+    public void when_filter_already_resolved_user_expect_no_lookup() {
+
+        User tester = getUser(UserRole.TESTER);
+        userLoggedInService.setLoggedInUser(request, tester);
+
+        assertThat(userLoggedInService.getLoggedInUser(), is(sameInstance(tester)));
+        assertThat(userLoggedInService.getLoggedInPrincipal().hasRole(UserRole.TESTER), is(true));
+        Mockito.verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void when_roles_are_checked_expect_mask_to_match_role_names() {
+
+        User user = getUser(UserRole.TESTER, UserRole.DOCTOR);
+
+        assertThat(user.doesRoleIsTester(), is(true));
+        assertThat(user.doesRoleIsDoctor(), is(true));
+        assertThat(user.doesRoleIsUser(), is(false));
+        assertThat(user.doesRoleIsAuthority(), is(false));
+        assertThat(user.doesUserHasRole("doctor"), is(true));
+        assertThat(user.doesUserHasRole("NOT_A_ROLE"), is(false));
+        assertThat(user.getRoleMask(), is(equalTo(UserRole.TESTER.getMask() | UserRole.DOCTOR.getMask())));
+
+        user.setRoles(new HashSet<>(Collections.singletonList(getRole(UserRole.USER))));
+
+        assertThat(user.doesRoleIsTester(), is(false));
+        assertThat(user.doesRoleIsUser(), is(true));
+        assertThat(UserRole.maskOf(null), is(equalTo(0)));
+    }
+
+    private User getUser(UserRole... userRoles) {
+        User user = new User();
+        user.setUserName("tester");
+        HashSet<Role> roles = new HashSet<>();
+        Arrays.stream(userRoles).map(this::getRole).forEach(roles::add);
+        user.setRoles(roles);
+        return user;
+    }
+
+    private Role getRole(UserRole userRole) {
+        Role role = new Role();
+        role.setName(userRole.name());
+        return role;
+    }
+}
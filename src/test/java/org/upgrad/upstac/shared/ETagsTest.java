@@ -0,0 +1,31 @@
+package org.upgrad.upstac.shared;
+
+import org.junit.jupiter.api.Test;
+import org.upgrad.upstac.exception.AppException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ETagsTest {
+
+    @Test
+    public void when_if_match_is_a_wildcard_expect_no_version_to_check() {
+
+        assertThat(ETags.toVersion("*"), is(nullValue()));
+        assertThat(ETags.toVersion(" * "), is(nullValue()));
+    }
+
+    @Test
+    public void when_if_match_is_an_etag_expect_its_version() {
+
+        assertThat(ETags.toVersion(ETags.fromVersion(3L)), is(3L));
+        assertThat(ETags.toVersion("W/\"4\""), is(4L));
+    }
+
+    @Test
+    public void when_if_match_is_not_a_version_expect_app_exception() {
+
+        assertThrows(AppException.class, () -> ETags.toVersion("\"abc\""));
+    }
+}
@@ -0,0 +1,57 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.lab.LabResult;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.testrequests.queue.ConsultationPriorityQueue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class ConsultationPriorityQueueTest {
+
+    ConsultationPriorityQueue consultationPriorityQueue = new ConsultationPriorityQueue();
+
+    @Test
+    public void when_results_arrive_expect_urgent_requests_ahead_of_earlier_ones() {
+
+        consultationPriorityQueue.add(getTestRequest(1L, 30), getLabResult(TestStatus.NEGATIVE, 98));
+        consultationPriorityQueue.add(getTestRequest(2L, 30), getLabResult(TestStatus.NEGATIVE, 97));
+        consultationPriorityQueue.add(getTestRequest(3L, 70), getLabResult(TestStatus.POSITIVE, 88));
+        consultationPriorityQueue.add(getTestRequest(4L, 40), getLabResult(TestStatus.POSITIVE, 95));
+
+        assertThat(consultationPriorityQueue.top(10), contains(3L, 4L, 1L, 2L));
+        assertThat(consultationPriorityQueue.top(2), contains(3L, 4L));
+    }
+
+    @Test
+    public void when_request_leaves_lab_test_completed_expect_it_removed_from_queue() {
+
+        consultationPriorityQueue.add(getTestRequest(1L, 30), getLabResult(TestStatus.NEGATIVE, null));
+        consultationPriorityQueue.add(getTestRequest(2L, 65), getLabResult(TestStatus.POSITIVE, 91));
+
+        consultationPriorityQueue.onStatusChanged(new StatusChanged(Collections.singletonList(2L), RequestStatus.LAB_TEST_COMPLETED, RequestStatus.DIAGNOSIS_IN_PROCESS, 9L));
+        consultationPriorityQueue.onStatusChanged(new StatusChanged(Arrays.asList(1L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 9L));
+
+        assertThat(consultationPriorityQueue.top(10), contains(1L));
+        assertThat(consultationPriorityQueue.size(), is(equalTo(1)));
+    }
+
+    private TestRequest getTestRequest(Long id, Integer age) {
+        TestRequest testRequest = new TestRequest();
+        testRequest.setRequestId(id);
+        testRequest.setAge(age);
+        return testRequest;
+    }
+
+    private LabResult getLabResult(TestStatus result, Integer spo2) {
+        LabResult labResult = new LabResult();
+        labResult.setResult(result);
+        labResult.setSpo2(spo2);
+        return labResult;
+    }
+}
@@ -0,0 +1,120 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.upgrad.upstac.config.idempotency.IdempotencyFilter;
+import org.upgrad.upstac.config.idempotency.IdempotencyStore;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class IdempotencyFilterTest {
+
+    JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+
+    IdempotencyStore idempotencyStore = new IdempotencyStore(100, 24);
+
+    IdempotencyFilter idempotencyFilter = new IdempotencyFilter();
+
+    AtomicInteger calls = new AtomicInteger();
+
+    HttpServlet controller = new HttpServlet() {
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setContentType("application/json");
+            int bodyLength = StreamUtils.copyToByteArray(request.getInputStream()).length;
+            response.getWriter().write("{\"requestId\":" + calls.incrementAndGet() + ",\"bodyLength\":" + bodyLength + "}");
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(idempotencyStore, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(idempotencyFilter, "idempotencyStore", idempotencyStore);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("someuser", null, Collections.emptyList()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void when_request_is_retried_with_same_key_expect_stored_response_without_running_it_again() throws Exception {
+
+        MockHttpServletResponse first = send("POST", "/api/testrequests", "abc");
+        MockHttpServletResponse retry = send("POST", "/api/testrequests", "abc");
+
+        assertThat(calls.get(), is(equalTo(1)));
+        assertThat(retry.getContentAsString(), is(equalTo(first.getContentAsString())));
+        assertThat(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER), is(equalTo("true")));
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).update(Mockito.startsWith("insert into idempotency_record"), Mockito.<Object[]>any());
+    }
+
+    @Test
+    public void when_key_is_reused_for_another_request_expect_conflict() throws Exception {
+
+        send("PUT", "/api/labrequests/update/1", "abc");
+        MockHttpServletResponse other = send("PUT", "/api/labrequests/update/2", "abc");
+
+        assertThat(other.getStatus(), is(equalTo(HttpServletResponse.SC_CONFLICT)));
+        assertThat(calls.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void when_key_is_reused_with_another_body_expect_conflict() throws Exception {
+
+        MockHttpServletResponse first = send("POST", "/api/testrequests", "abc", "{\"name\":\"first\"}");
+        MockHttpServletResponse other = send("POST", "/api/testrequests", "abc", "{\"name\":\"second\"}");
+
+        assertThat(first.getContentAsString(), containsString("\"bodyLength\":16"));
+        assertThat(other.getStatus(), is(equalTo(HttpServletResponse.SC_CONFLICT)));
+        assertThat(calls.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void when_the_response_cannot_be_stored_expect_it_sent_anyway() throws Exception {
+
+        Mockito.when(jdbcTemplate.update(Mockito.startsWith("insert into idempotency_record"), Mockito.<Object[]>any()))
+                .thenThrow(new QueryTimeoutException("database down"));
+
+        MockHttpServletResponse response = send("POST", "/api/testrequests", "abc");
+
+        assertThat(response.getStatus(), is(equalTo(HttpServletResponse.SC_OK)));
+        assertThat(response.getContentAsString(), containsString("\"requestId\":1"));
+    }
+
+    private MockHttpServletResponse send(String method, String path, String idempotencyKey) throws Exception {
+        return send(method, path, idempotencyKey, "{}");
+    }
+
+    private MockHttpServletResponse send(String method, String path, String idempotencyKey, String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        idempotencyFilter.doFilter(request, response, new MockFilterChain(controller));
+        return response;
+    }
+}
@@ -0,0 +1,145 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.testrequests.assignment.LabAssignmentScheduler;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.users.User;
+import org.upgrad.upstac.users.UserRepository;
+import org.upgrad.upstac.users.models.AccountStatus;
+import org.upgrad.upstac.users.roles.Role;
+import org.upgrad.upstac.users.roles.UserRole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LabAssignmentSchedulerTest {
+
+    LabAssignmentScheduler labAssignmentScheduler = new LabAssignmentScheduler();
+
+    UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    TestRequestUpdateService testRequestUpdateService = Mockito.mock(TestRequestUpdateService.class);
+
+    PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(labAssignmentScheduler, "maxOpenPerTester", 2);
+        ReflectionTestUtils.setField(labAssignmentScheduler, "enabled", true);
+        ReflectionTestUtils.setField(labAssignmentScheduler, "userRepository", userRepository);
+        ReflectionTestUtils.setField(labAssignmentScheduler, "testRequestUpdateService", testRequestUpdateService);
+        ReflectionTestUtils.setField(labAssignmentScheduler, "requiresNew", new TransactionTemplate(transactionManager));
+
+        Map<Long, Integer> pinCodeByTester = new HashMap<>();
+        pinCodeByTester.put(1L, 560001);
+        pinCodeByTester.put(2L, 560034);
+        pinCodeByTester.put(3L, 110001);
+        pinCodeByTester.put(4L, null);
+        ReflectionTestUtils.invokeMethod(labAssignmentScheduler, "setTesters", pinCodeByTester);
+    }
+
+    @Test
+    public void when_testers_share_pin_code_or_district_expect_nearest_least_loaded_tester() {
+
+        assertThat(assignNext(10L, 560001), is(equalTo(1L)));
+        assertThat(assignNext(11L, 560001), is(equalTo(1L)));
+        assertThat(assignNext(12L, 560001), is(equalTo(2L)));
+        assertThat(assignNext(13L, 560099), is(equalTo(2L)));
+        assertThat(assignNext(14L, 560099), is(equalTo(3L)));
+        assertThat(labAssignmentScheduler.getOpenByTester(), is(equalTo(expectedLoad(2, 2, 1, 0))));
+    }
+
+    @Test
+    public void when_every_tester_is_full_expect_request_left_for_pulling() {
+
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Arrays.asList(10L, 11L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 1L));
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Arrays.asList(12L, 13L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 2L));
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Arrays.asList(14L, 15L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Arrays.asList(16L, 17L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 4L));
+
+        assertThat(reserveFor(560001), is(equalTo(Optional.empty())));
+
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Collections.singletonList(13L), RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED, 2L));
+
+        assertThat(reserveFor(560001), is(equalTo(Optional.of(2L))));
+        assertThat(labAssignmentScheduler.getOpenByTester().get(2L), is(equalTo(1)));
+        assertThat(labAssignmentScheduler.getOpenByTester().get(1L), is(equalTo(2)));
+    }
+
+    @Test
+    public void when_nearest_tester_is_no_longer_approved_expect_next_tester_assigned() {
+
+        User rejected = getTester(1L, AccountStatus.REJECTED);
+        User approved = getTester(2L, AccountStatus.APPROVED);
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(rejected));
+        Mockito.when(userRepository.findById(2L)).thenReturn(Optional.of(approved));
+
+        labAssignmentScheduler.assign(getTestRequest(10L, 560001));
+        labAssignmentScheduler.assign(getTestRequest(11L, 560001));
+
+        // assigned one after the other on the background thread
+        Mockito.verify(testRequestUpdateService, Mockito.timeout(1000)).assignForLabTest(10L, approved);
+        Mockito.verify(testRequestUpdateService, Mockito.timeout(1000)).assignForLabTest(11L, approved);
+        Mockito.verify(userRepository, Mockito.times(1)).findById(1L);
+    }
+
+    @Test
+    public void when_assignment_fails_expect_creation_unaffected() {
+
+        User approved = getTester(1L, AccountStatus.APPROVED);
+        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(approved));
+        Mockito.when(testRequestUpdateService.assignForLabTest(10L, approved)).thenThrow(new AppException("Invalid ID"));
+
+        labAssignmentScheduler.assign(getTestRequest(10L, 560001));
+
+        Mockito.verify(transactionManager, Mockito.timeout(1000)).rollback(Mockito.any());
+    }
+
+    private TestRequest getTestRequest(Long id, Integer pinCode) {
+        TestRequest testRequest = new TestRequest();
+        testRequest.setRequestId(id);
+        testRequest.setPinCode(pinCode);
+        return testRequest;
+    }
+
+    private User getTester(Long id, AccountStatus status) {
+        Role role = new Role();
+        role.setName(UserRole.TESTER.name());
+        User user = new User();
+        user.setId(id);
+        user.setStatus(status);
+        user.setRoles(new HashSet<>(Collections.singletonList(role)));
+        return user;
+    }
+
+    // Reserves like a creation would, then commits the assignment
+    private Long assignNext(Long requestId, Integer pinCode) {
+        Long testerId = reserveFor(pinCode).orElseThrow(IllegalStateException::new);
+        labAssignmentScheduler.onStatusChanged(new StatusChanged(Collections.singletonList(requestId), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, testerId));
+        return testerId;
+    }
+
+    private Map<Long, Integer> expectedLoad(Integer... open) {
+        Map<Long, Integer> load = new HashMap<>();
+        for (int index = 0; index < open.length; index++)
+            load.put(index + 1L, open[index]);
+        return load;
+    }
+
+    private Optional<Long> reserveFor(Integer pinCode) {
+        return ReflectionTestUtils.invokeMethod(labAssignmentScheduler, "reserveFor", pinCode);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.web.server.ResponseStatusException;
 import org.upgrad.upstac.config.security.UserLoggedInService;
+import org.upgrad.upstac.exception.ConflictException;
 import org.upgrad.upstac.testrequests.lab.CreateLabResult;
 import org.upgrad.upstac.testrequests.lab.LabRequestController;
 import org.upgrad.upstac.testrequests.lab.LabResult;
@@ -170,6 +171,24 @@ class LabRequestControllerTest {
         assertThat(responseStatusException.getMessage(), containsString("ConstraintViolationException"));
     }
 
+    @Test
+    @WithUserDetails(value = "tester")
+    public void calling_updateLabTestIfMatch_with_stale_version_should_throw_conflict(){
+        User loggedInUser = initializeTest();
+        mockFindBy(loggedInUser, RequestStatus.LAB_TEST_IN_PROGRESS);
+
+        TestRequest testRequest = getTestRequestByStatus(RequestStatus.LAB_TEST_IN_PROGRESS);
+        CreateLabResult createLabResult = this.getCreateLabResult(testRequest);
+
+        Mockito.when(testRequestUpdateService.updateLabTest(testRequest.getRequestId(), createLabResult, loggedInUser, 3L))
+                .thenThrow(new ConflictException("Test request was modified by someone else, reload and retry"));
+
+        ResponseStatusException responseStatusException =
+                assertThrows(ResponseStatusException.class, () -> labRequestController.updateLabTestIfMatch(testRequest.getRequestId(), "\"3\"", createLabResult));
+
+        assertThat(responseStatusException.getStatus(), is(equalTo(HttpStatus.CONFLICT)));
+    }
+
     public CreateLabResult getCreateLabResult(TestRequest testRequest) {
         CreateLabResult createLabResult = new CreateLabResult();
 
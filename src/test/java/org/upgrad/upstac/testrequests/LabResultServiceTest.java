@@ -0,0 +1,70 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.testrequests.lab.CreateLabResult;
+import org.upgrad.upstac.testrequests.lab.LabResult;
+import org.upgrad.upstac.testrequests.lab.LabResultRepository;
+import org.upgrad.upstac.testrequests.lab.LabResultService;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.users.User;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+
+@ExtendWith(MockitoExtension.class)
+class LabResultServiceTest {
+
+    @Mock
+    LabResultRepository labResultRepository;
+
+    @InjectMocks
+    LabResultService labResultService;
+
+    @Test
+    public void when_lab_test_is_updated_expect_the_assigned_row_to_be_filled_in() {
+
+        TestRequest testRequest = new TestRequest();
+        User tester = new User();
+        LabResult assigned = new LabResult();
+        assigned.setRequest(testRequest);
+        assigned.setTester(tester);
+        Mockito.when(labResultRepository.findByRequest(testRequest)).thenReturn(Optional.of(assigned));
+
+        LabResult updated = labResultService.updateLabTest(testRequest, getCreateLabResult());
+
+        assertThat(updated, is(sameInstance(assigned)));
+        assertThat(updated.getResult(), is(equalTo(TestStatus.NEGATIVE)));
+        assertThat(updated.getTester(), is(sameInstance(tester)));
+        assertThat(updated.getUpdatedOn(), is(notNullValue()));
+        Mockito.verify(labResultRepository, Mockito.never()).save(any());
+    }
+
+    @Test
+    public void when_no_lab_result_is_assigned_expect_app_exception() {
+
+        TestRequest testRequest = new TestRequest();
+        Mockito.when(labResultRepository.findByRequest(testRequest)).thenReturn(Optional.empty());
+
+        assertThrows(AppException.class, () -> labResultService.updateLabTest(testRequest, getCreateLabResult()));
+    }
+
+    private CreateLabResult getCreateLabResult() {
+        CreateLabResult createLabResult = new CreateLabResult();
+        createLabResult.setBloodPressure("120");
+        createLabResult.setHeartBeat("72");
+        createLabResult.setTemperature("98.6");
+        createLabResult.setOxygenLevel("97");
+        createLabResult.setResult(TestStatus.NEGATIVE);
+        return createLabResult;
+    }
+}
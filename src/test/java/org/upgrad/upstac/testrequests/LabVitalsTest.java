@@ -0,0 +1,45 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.upgrad.upstac.testrequests.lab.CreateLabResult;
+import org.upgrad.upstac.testrequests.lab.LabVitals;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LabVitalsTest {
+
+    @Test
+    public void when_vitals_are_typed_in_common_formats_expect_them_parsed() {
+
+        assertThat(LabVitals.systolicOf("120/80 mmHg"), is(equalTo(120)));
+        assertThat(LabVitals.diastolicOf(" 120 / 80 "), is(equalTo(80)));
+        assertThat(LabVitals.heartRateOf("72 bpm"), is(equalTo(72)));
+        assertThat(LabVitals.temperatureOf("98.6 F"), is(equalTo(new BigDecimal("37.0"))));
+        assertThat(LabVitals.temperatureOf("101"), is(equalTo(new BigDecimal("38.3"))));
+        assertThat(LabVitals.temperatureOf("37.2C"), is(equalTo(new BigDecimal("37.2"))));
+        assertThat(LabVitals.spo2Of("91%"), is(equalTo(91)));
+    }
+
+    @Test
+    public void when_vitals_are_unreadable_or_out_of_range_expect_null_and_a_failed_check() {
+
+        assertThat(LabVitals.systolicOf("80/120"), is(nullValue()));
+        assertThat(LabVitals.heartRateOf("fast"), is(nullValue()));
+        assertThat(LabVitals.temperatureOf("120"), is(nullValue()));
+        assertThat(LabVitals.spo2Of("101"), is(nullValue()));
+
+        CreateLabResult createLabResult = new CreateLabResult();
+        createLabResult.setBloodPressure("high");
+        createLabResult.setHeartBeat("72");
+        createLabResult.setTemperature("98.6");
+        createLabResult.setResult(TestStatus.POSITIVE);
+
+        assertThat(createLabResult.isBloodPressureReadable(), is(false));
+        assertThat(createLabResult.isHeartBeatReadable(), is(true));
+        assertThat(createLabResult.isOxygenLevelReadable(), is(true));
+    }
+}
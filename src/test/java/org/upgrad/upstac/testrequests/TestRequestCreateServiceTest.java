@@ -6,7 +6,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.testrequests.assignment.LabAssignmentScheduler;
 import org.upgrad.upstac.users.User;
 import org.upgrad.upstac.users.models.Gender;
 
@@ -25,6 +27,15 @@ class TestRequestCreateServiceTest {
     @Mock
     TestRequestRepository testRequestRepository;
 
+    @Mock
+    ActiveRequestKeyService activeRequestKeyService;
+
+    @Mock
+    ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    LabAssignmentScheduler labAssignmentScheduler;
+
 
     @InjectMocks
     TestRequestService testRequestService;
@@ -46,15 +57,15 @@ class TestRequestCreateServiceTest {
 
 
         //Mock
-        //testRequestRepository.findByEmailOrPhoneNumber
-        //returns  List<TestRequest>
+        //testRequestRepository.existsByEmailAndStatusNot / existsByPhoneNumberAndStatusNot
+        //returns  boolean
 
-        List<TestRequest> existingTestRequests = new ArrayList<>();
-        Mockito.when(testRequestRepository.findByEmailOrPhoneNumber(createTestRequest.getEmail(),createTestRequest.getPhoneNumber())).thenReturn(existingTestRequests);
+        Mockito.when(testRequestRepository.existsByEmailAndStatusNot(createTestRequest.getEmail(),RequestStatus.COMPLETED)).thenReturn(false);
+        Mockito.when(testRequestRepository.existsByPhoneNumberAndStatusNot(createTestRequest.getPhoneNumber(),RequestStatus.COMPLETED)).thenReturn(false);
 
         //testRequestRepository.save
         //return TestRequest
-        //Mockito.when(testRequestRepository.save(mockedResponse)).thenReturn(mockedResponse);
+        Mockito.when(testRequestRepository.save(any())).thenReturn(mockedResponse);
 
         //Act
         // Call createTestRequestFrom
@@ -69,6 +80,7 @@ class TestRequestCreateServiceTest {
         //Assert
 
         Mockito.verify(testRequestRepository).save(any());
+        Mockito.verify(labAssignmentScheduler).assign(mockedResponse);
 
     }
 
@@ -90,11 +102,11 @@ class TestRequestCreateServiceTest {
 
 
         //Mock
-        //testRequestRepository.findByEmailOrPhoneNumber
-            //returns  List<TestRequest>
+        //testRequestRepository.existsByEmailAndStatusNot / existsByPhoneNumberAndStatusNot
+            //returns  boolean
 
-        List<TestRequest> existingTestRequests = getExistingTestRequests();
-        Mockito.when(testRequestRepository.findByEmailOrPhoneNumber(createTestRequest.getEmail(),createTestRequest.getPhoneNumber())).thenReturn(existingTestRequests);
+        Mockito.when(testRequestRepository.existsByEmailAndStatusNot(createTestRequest.getEmail(),RequestStatus.COMPLETED)).thenReturn(false);
+        Mockito.when(testRequestRepository.existsByPhoneNumberAndStatusNot(createTestRequest.getPhoneNumber(),RequestStatus.COMPLETED)).thenReturn(true);
         //testRequestRepository.save
         //return TestRequest
 
@@ -117,6 +129,26 @@ class TestRequestCreateServiceTest {
 
     }
 
+    @Test
+    public void when_active_request_key_already_claimed_throw_exception_and_publish_nothing() {
+
+        User user= createUser();
+        CreateTestRequest createTestRequest = createTestRequest();
+        TestRequest savedTestRequest = getMockedTestRequest();
+
+        Mockito.when(testRequestRepository.save(any())).thenReturn(savedTestRequest);
+        Mockito.doThrow(new AppException("A Request with same PhoneNumber or Email is already in progress "))
+                .when(activeRequestKeyService).claim(savedTestRequest);
+
+        AppException result = assertThrows(AppException.class,()->{
+
+            testRequestService.createTestRequestFrom(user,createTestRequest);
+        });
+
+        assertThat(result.getMessage(),containsString("A Request with same PhoneNumber or Email is already in progress"));
+        Mockito.verifyNoInteractions(applicationEventPublisher);
+    }
+
     public CreateTestRequest createTestRequest() {
         CreateTestRequest createTestRequest = new CreateTestRequest();
         createTestRequest.setAddress("some Addres");
@@ -0,0 +1,224 @@
+package org.upgrad.upstac.testrequests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.upgrad.upstac.testrequests.archive.ArchivedTestRequestDocument;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
+import org.upgrad.upstac.testrequests.export.ExportFormat;
+import org.upgrad.upstac.testrequests.export.TestRequestExportService;
+import org.upgrad.upstac.testrequests.lab.LabResult;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.users.User;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestExportServiceTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Mock
+    Connection connection;
+
+    @Mock
+    PreparedStatement statement;
+
+    @Mock
+    TestRequestArchive testRequestArchive;
+
+    @Spy
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    TestRequestExportService testRequestExportService;
+
+    @Test
+    public void when_exporting_with_filters_expect_each_one_bound_as_a_parameter_on_a_streaming_statement() throws Exception {
+
+        streamRows();
+
+        testRequestExportService.export(LocalDate.of(2020, 8, 1), LocalDate.of(2020, 8, 31), RequestStatus.COMPLETED, 600001, false, ExportFormat.CSV, new ByteArrayOutputStream());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(connection).prepareStatement(sql.capture(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY));
+        assertThat(sql.getValue(), containsString("and t.created >= ? and t.created <= ? and t.status = ? and t.pin_code = ? order by t.request_id"));
+        Mockito.verify(statement).setFetchSize(Integer.MIN_VALUE);
+        Mockito.verify(statement).setObject(1, Date.valueOf(LocalDate.of(2020, 8, 1)));
+        Mockito.verify(statement).setObject(2, Date.valueOf(LocalDate.of(2020, 8, 31)));
+        Mockito.verify(statement).setObject(3, RequestStatus.COMPLETED.ordinal());
+        Mockito.verify(statement).setObject(4, 600001);
+    }
+
+    @Test
+    public void when_exporting_without_filters_expect_no_conditions_or_parameters() throws Exception {
+
+        streamRows();
+
+        testRequestExportService.export(null, null, null, null, false, ExportFormat.CSV, new ByteArrayOutputStream());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(connection).prepareStatement(sql.capture(), anyInt(), anyInt());
+        assertThat(sql.getValue(), endsWith("where 1 = 1 order by t.request_id"));
+        Mockito.verify(statement, Mockito.never()).setObject(anyInt(), any());
+    }
+
+    @Test
+    public void when_exporting_csv_expect_a_header_and_values_with_separators_quotes_or_newlines_quoted() throws Exception {
+
+        streamRows(resultSetOf(1L, Date.valueOf("2020-08-01"), 0, "Doe, \"Jim\"", 30, 0, "jim@x.com", "111", 600001, "12 Main St\nFlat 4"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        testRequestExportService.export(null, null, null, null, false, ExportFormat.CSV, outputStream);
+
+        String csv = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(csv, startsWith("requestId,created,status,name,age,gender,email,phoneNumber,pinCode,address,result,"));
+        assertThat(csv, containsString("\n1,2020-08-01,INITIATED,\"Doe, \"\"Jim\"\"\",30,MALE,jim@x.com,111,600001,\"12 Main St\nFlat 4\",,"));
+    }
+
+    @Test
+    public void when_exporting_ndjson_expect_one_json_object_per_line() throws Exception {
+
+        streamRows(resultSetOf(1L, Date.valueOf("2020-08-01"), 4, "Jim", 30, 1, "jim@x.com", "111", 600001, "12 Main St", 1,
+                        "120/80", "72", "99.1", "97", 120, 80, 72, new BigDecimal("37.3"), 97),
+                resultSetOf(2L, Date.valueOf("2020-08-02"), 0, "Ann"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        testRequestExportService.export(null, null, null, null, false, ExportFormat.NDJSON, outputStream);
+
+        List<String> lines = Arrays.asList(new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertThat(lines, hasSize(2));
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertThat(first.get("requestId").asLong(), equalTo(1L));
+        assertThat(first.get("status").asText(), equalTo("COMPLETED"));
+        assertThat(first.get("gender").asText(), equalTo("FEMALE"));
+        assertThat(first.get("result").asText(), equalTo("POSITIVE"));
+        assertThat(first.get("systolic").asInt(), equalTo(120));
+        assertThat(first.get("bodyTemperature").decimalValue(), equalTo(new BigDecimal("37.3")));
+        assertThat(first.get("spo2").asInt(), equalTo(97));
+        JsonNode second = objectMapper.readTree(lines.get(1));
+        assertThat(second.get("name").asText(), equalTo("Ann"));
+        assertThat(second.get("result").isNull(), is(true));
+    }
+
+    @Test
+    public void when_including_archived_requests_expect_them_after_the_live_ones_filtered_by_pin_code() throws Exception {
+
+        Mockito.when(testRequestArchive.decode(any())).thenReturn(documentOf(archivedRequest(5L, 600001)), documentOf(archivedRequest(6L, 700001)));
+        streamQueries(new ResultSet[]{resultSetOf(1L, Date.valueOf("2020-08-01"), 0, "Jim")},
+                new ResultSet[]{resultSetOf(5L, new byte[0]), resultSetOf(6L, new byte[0])});
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        testRequestExportService.export(LocalDate.of(2020, 8, 1), null, null, 600001, true, ExportFormat.NDJSON, outputStream);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(connection, Mockito.times(2)).prepareStatement(sql.capture(), anyInt(), anyInt());
+        assertThat(sql.getAllValues().get(1), endsWith("from archived_test_request a where 1 = 1 and a.created >= ? order by a.request_id"));
+        List<String> lines = Arrays.asList(new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertThat(lines, hasSize(2));
+        JsonNode archived = objectMapper.readTree(lines.get(1));
+        assertThat(archived.get("requestId").asLong(), equalTo(5L));
+        assertThat(archived.get("status").asText(), equalTo("COMPLETED"));
+        assertThat(archived.get("result").asText(), equalTo("NEGATIVE"));
+        assertThat(archived.get("tester").asText(), equalTo("tester"));
+    }
+
+    @Test
+    public void when_exporting_a_status_other_than_completed_expect_the_archive_left_alone() throws Exception {
+
+        streamRows();
+
+        testRequestExportService.export(null, null, RequestStatus.INITIATED, null, true, ExportFormat.CSV, new ByteArrayOutputStream());
+
+        Mockito.verify(connection, Mockito.times(1)).prepareStatement(anyString(), anyInt(), anyInt());
+        Mockito.verifyNoInteractions(testRequestArchive);
+    }
+
+    private TestRequest archivedRequest(Long requestId, Integer pinCode) {
+        User tester = new User();
+        tester.setUserName("tester");
+        LabResult labResult = new LabResult();
+        labResult.setResult(TestStatus.NEGATIVE);
+        labResult.setTester(tester);
+
+        TestRequest testRequest = new TestRequest();
+        testRequest.setRequestId(requestId);
+        testRequest.setStatus(RequestStatus.COMPLETED);
+        testRequest.setPinCode(pinCode);
+        testRequest.setLabResult(labResult);
+        return testRequest;
+    }
+
+    private ArchivedTestRequestDocument documentOf(TestRequest testRequest) {
+        ArchivedTestRequestDocument document = new ArchivedTestRequestDocument();
+        document.setTestRequest(testRequest);
+        return document;
+    }
+
+    private void streamRows(ResultSet... rows) throws Exception {
+        streamQueries(rows);
+    }
+
+    // runs each statement creator against the mocked connection, then hands the next rows in turn to its callback
+    private void streamQueries(ResultSet[]... rowsPerQuery) throws Exception {
+        Iterator<ResultSet[]> queries = Arrays.asList(rowsPerQuery).iterator();
+        Mockito.when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        Mockito.doAnswer(invocation -> {
+            ((PreparedStatementCreator) invocation.getArgument(0)).createPreparedStatement(connection);
+            for (ResultSet row : queries.next())
+                ((RowCallbackHandler) invocation.getArgument(1)).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    // a row holding the given values in its first columns, null in the rest
+    private ResultSet resultSetOf(Object... values) {
+        Object[] last = new Object[1];
+        return Mockito.mock(ResultSet.class, invocation -> {
+            String method = invocation.getMethod().getName();
+            if (method.equals("wasNull"))
+                return last[0] == null;
+            if (invocation.getArguments().length != 1 || (invocation.getArgument(0) instanceof Integer) == false)
+                return Mockito.RETURNS_DEFAULTS.answer(invocation);
+
+            int column = invocation.getArgument(0);
+            Object value = column <= values.length ? values[column - 1] : null;
+            last[0] = value;
+            if (method.equals("getLong"))
+                return value == null ? 0L : ((Number) value).longValue();
+            if (method.equals("getInt"))
+                return value == null ? 0 : ((Number) value).intValue();
+            if (method.equals("getString"))
+                return value == null ? null : value.toString();
+            return value;
+        });
+    }
+}
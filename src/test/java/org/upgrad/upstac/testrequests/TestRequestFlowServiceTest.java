@@ -0,0 +1,73 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlow;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlowRepository;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlowService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestFlowServiceTest {
+
+    @Mock
+    TestRequestFlowRepository testRequestFlowRepository;
+
+    @Mock
+    TestRequestArchive testRequestArchive;
+
+    @InjectMocks
+    TestRequestFlowService testRequestFlowService;
+
+    @Test
+    public void when_flows_of_many_requests_are_asked_for_expect_them_grouped_by_request() {
+
+        TestRequestFlow assigned = getTestRequestFlow(RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS);
+        TestRequestFlow tested = getTestRequestFlow(RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED);
+        TestRequestFlow otherAssigned = getTestRequestFlow(RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS);
+
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, assigned});
+        rows.add(new Object[]{1L, tested});
+        rows.add(new Object[]{2L, otherAssigned});
+        Mockito.when(testRequestFlowRepository.findAllByRequestIdIn(anyCollection())).thenReturn(rows);
+
+        Map<Long, List<TestRequestFlow>> timeline = testRequestFlowService.findByRequestIds(Arrays.asList(2L, 1L, 3L, 1L));
+
+        assertThat(timeline.keySet(), contains(2L, 1L, 3L));
+        assertThat(timeline.get(1L), contains(assigned, tested));
+        assertThat(timeline.get(2L), contains(otherAssigned));
+        assertThat(timeline.get(3L), is(empty()));
+        Mockito.verify(testRequestFlowRepository, Mockito.times(1)).findAllByRequestIdIn(anyCollection());
+        Mockito.verify(testRequestArchive).findFlows(Collections.singletonList(3L));
+    }
+
+    @Test
+    public void when_no_ids_are_given_expect_app_exception() {
+
+        assertThrows(AppException.class, () -> testRequestFlowService.findByRequestIds(Collections.emptyList()));
+    }
+
+    private TestRequestFlow getTestRequestFlow(RequestStatus from, RequestStatus to) {
+        TestRequestFlow testRequestFlow = new TestRequestFlow();
+        testRequestFlow.setFromStatus(from);
+        testRequestFlow.setToStatus(to);
+        return testRequestFlow;
+    }
+}
@@ -0,0 +1,136 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlowWriter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestFlowWriterTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    TestRequestFlowWriter testRequestFlowWriter;
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(testRequestFlowWriter, "requiresNew", new TransactionTemplate(transactionManager));
+    }
+
+    @Test
+    public void when_status_changes_are_flushed_expect_one_batch_with_a_row_per_request() {
+
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Collections.singletonList(9L), null, RequestStatus.INITIATED, 1L));
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Arrays.asList(1L, 2L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Collections.singletonList(1L), RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED, 3L));
+
+        testRequestFlowWriter.flush();
+        testRequestFlowWriter.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+
+        assertThat(rows.getValue(), hasSize(3));
+        assertThat(rows.getValue().get(0)[0], equalTo(1L));
+        assertThat(rows.getValue().get(2)[2], equalTo(RequestStatus.LAB_TEST_COMPLETED.ordinal()));
+    }
+
+    @Test
+    public void when_a_batch_fails_expect_its_rows_written_first_on_the_next_flush() {
+
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new RuntimeException("down"))
+                .thenReturn(new int[]{1});
+
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Collections.singletonList(1L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        testRequestFlowWriter.flush();
+
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Collections.singletonList(2L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        testRequestFlowWriter.flush();
+        testRequestFlowWriter.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate, Mockito.times(3)).batchUpdate(anyString(), rows.capture());
+
+        assertThat(rows.getAllValues().get(1), hasSize(1));
+        assertThat(rows.getAllValues().get(1).get(0)[0], equalTo(1L));
+        assertThat(rows.getAllValues().get(2).get(0)[0], equalTo(2L));
+    }
+
+    @Test
+    public void when_a_batch_is_refused_for_good_expect_its_rows_written_one_by_one_and_only_the_bad_one_dropped() {
+
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("no such request"))
+                .thenReturn(new int[]{1});
+        Mockito.when(jdbcTemplate.update(anyString(), Mockito.<Object>any())).thenAnswer(invocation -> {
+            if (Long.valueOf(2L).equals(invocation.getArgument(1)))
+                throw new DataIntegrityViolationException("no such request");
+            return 1;
+        });
+
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Arrays.asList(1L, 2L, 3L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        testRequestFlowWriter.flush();
+
+        testRequestFlowWriter.onStatusChanged(new StatusChanged(Collections.singletonList(4L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L));
+        testRequestFlowWriter.flush();
+
+        Mockito.verify(jdbcTemplate, Mockito.times(3)).update(anyString(), Mockito.<Object>any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate, Mockito.times(2)).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getAllValues().get(1), hasSize(1));
+        assertThat(rows.getAllValues().get(1).get(0)[0], equalTo(4L));
+    }
+
+    @Test
+    public void when_a_batch_never_succeeds_expect_the_publisher_held_back_only_for_a_bounded_time() {
+
+        ReflectionTestUtils.setField(testRequestFlowWriter, "flushIntervalMillis", 10L);
+        ReflectionTestUtils.setField(testRequestFlowWriter, "maxEnqueueWaitMillis", 50L);
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("down"));
+
+        // enough rows to fill the buffer and the failed batch kept beside it, and then some
+        int capacity = (Integer) ReflectionTestUtils.getField(TestRequestFlowWriter.class, "BUFFER_CAPACITY");
+        int batchSize = (Integer) ReflectionTestUtils.getField(TestRequestFlowWriter.class, "BATCH_SIZE");
+        List<Long> requestIds = new ArrayList<>();
+        for (long id = 1; id <= capacity + batchSize + 10; id++)
+            requestIds.add(id);
+
+        assertTimeout(Duration.ofSeconds(5), () -> testRequestFlowWriter.onStatusChanged(
+                new StatusChanged(requestIds, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 3L)));
+
+        Mockito.verify(jdbcTemplate, Mockito.atLeastOnce()).batchUpdate(anyString(), anyList());
+        Mockito.verify(jdbcTemplate, Mockito.never()).update(anyString(), Mockito.<Object>any());
+    }
+}
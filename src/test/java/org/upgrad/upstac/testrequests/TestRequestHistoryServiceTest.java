@@ -0,0 +1,55 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryEntry;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryRepository;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryService;
+import org.upgrad.upstac.users.User;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class TestRequestHistoryServiceTest {
+
+    TestRequestHistoryRepository testRequestHistoryRepository = Mockito.mock(TestRequestHistoryRepository.class);
+
+    JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+
+    TestRequestHistoryService testRequestHistoryService = new TestRequestHistoryService(10, 600);
+
+    @Test
+    public void when_history_is_read_twice_expect_one_query_until_the_user_creates_a_request() {
+
+        ReflectionTestUtils.setField(testRequestHistoryService, "testRequestHistoryRepository", testRequestHistoryRepository);
+        ReflectionTestUtils.setField(testRequestHistoryService, "jdbcTemplate", jdbcTemplate);
+
+        User user = new User();
+        user.setId(7L);
+        TestRequestHistoryEntry entry = new TestRequestHistoryEntry();
+        entry.setRequestId(1L);
+        entry.setStatus(RequestStatus.COMPLETED);
+        Mockito.when(testRequestHistoryRepository.findByCreatedByIdOrderByRequestIdAsc(7L)).thenReturn(Collections.singletonList(entry));
+
+        List<TestRequestHistoryEntry> first = testRequestHistoryService.findByUser(user);
+        List<TestRequestHistoryEntry> second = testRequestHistoryService.findByUser(user);
+
+        assertThat(second, contains(entry));
+        assertThat(second, is(sameInstance(first)));
+        Mockito.verify(testRequestHistoryRepository, Mockito.times(1)).findByCreatedByIdOrderByRequestIdAsc(7L);
+
+        testRequestHistoryService.onStatusChanged(new StatusChanged(Collections.singletonList(2L), null, RequestStatus.INITIATED, 7L));
+        testRequestHistoryService.findByUser(user);
+
+        Mockito.verify(jdbcTemplate).batchUpdate(anyString(), anyList());
+        Mockito.verify(testRequestHistoryRepository, Mockito.times(2)).findByCreatedByIdOrderByRequestIdAsc(7L);
+    }
+}
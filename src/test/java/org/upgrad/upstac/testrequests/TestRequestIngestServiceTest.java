@@ -0,0 +1,158 @@
+package org.upgrad.upstac.testrequests;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.DuplicateRequestException;
+import org.upgrad.upstac.users.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestIngestServiceTest {
+
+    @Mock
+    TestRequestService testRequestService;
+
+    @Mock
+    ActiveRequestKeyService activeRequestKeyService;
+
+    @Spy
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    TestRequestIngestService testRequestIngestService;
+
+    @Test
+    public void when_ingesting_csv_expect_invalid_and_duplicate_rows_reported_and_rest_created() {
+
+        User user = createUser();
+        Mockito.when(activeRequestKeyService.findClaimed(any())).thenReturn(Collections.singleton("phone:333"));
+        Mockito.when(testRequestService.createTestRequestsFrom(eq(user), anyList())).thenAnswer(invocation -> withIds(invocation.getArgument(1)));
+
+        String csv = "name,email,phoneNumber,age,gender,address\n"
+                + "one,one@x.com,111,30,male,\"12, Main Road\"\n"
+                + "two,two@x.com,222,thirty,female,a\n"
+                + "three,three@x.com,333,40,male,a\n"
+                + "\n"
+                + "four,one@x.com,444,50,other,a\n"
+                + "five,five@x.com,555,60,female,a\n";
+
+        BulkIngestReport report = testRequestIngestService.ingestCsv(user, toStream(csv));
+
+        assertThat(report.getCreated(), equalTo(2));
+        assertThat(report.getRejected(), equalTo(3));
+        assertThat(outcomes(report), contains(BulkIngestRow.Outcome.CREATED, BulkIngestRow.Outcome.INVALID,
+                BulkIngestRow.Outcome.DUPLICATE, BulkIngestRow.Outcome.DUPLICATE, BulkIngestRow.Outcome.CREATED));
+        assertThat(report.getRows().get(1).getMessage(), containsString("age"));
+        assertThat(report.getRows().get(4).getRow(), equalTo(5L));
+
+        Mockito.verify(testRequestService).createTestRequestsFrom(eq(user), Mockito.argThat((List<CreateTestRequest> requests) ->
+                requests.size() == 2 && requests.get(0).getAddress().equals("12, Main Road")));
+    }
+
+    @Test
+    public void when_ingesting_json_with_a_bad_record_expect_the_remaining_records_created() {
+
+        User user = createUser();
+        Mockito.when(activeRequestKeyService.findClaimed(any())).thenReturn(Collections.emptySet());
+        Mockito.when(testRequestService.createTestRequestsFrom(eq(user), anyList())).thenAnswer(invocation -> withIds(invocation.getArgument(1)));
+
+        String json = "[{\"name\":\"one\",\"email\":\"one@x.com\",\"phoneNumber\":\"111\"},"
+                + "{\"name\":\"two\",\"email\":\"two@x.com\",\"phoneNumber\":\"222\",\"gender\":\"UNKNOWN\"},"
+                + "{\"name\":\"three\",\"email\":\"three@x.com\"}]";
+
+        BulkIngestReport report = testRequestIngestService.ingestJson(user, toStream(json));
+
+        assertThat(outcomes(report), contains(BulkIngestRow.Outcome.CREATED, BulkIngestRow.Outcome.INVALID, BulkIngestRow.Outcome.INVALID));
+        assertThat(report.getRows().get(2).getMessage(), containsString("required"));
+    }
+
+    @Test
+    public void when_batch_insert_loses_a_race_expect_rows_settled_one_at_a_time() {
+
+        User user = createUser();
+        Mockito.when(activeRequestKeyService.findClaimed(any())).thenReturn(Collections.emptySet());
+        Mockito.when(testRequestService.createTestRequestsFrom(eq(user), anyList())).thenThrow(new DuplicateRequestException());
+        TestRequest created = new TestRequest();
+        created.setRequestId(7L);
+        Mockito.when(testRequestService.createTestRequestFrom(eq(user), any()))
+                .thenReturn(created)
+                .thenThrow(new DuplicateRequestException());
+
+        BulkIngestReport report = testRequestIngestService.ingestCsv(user, toStream("name,email,phoneNumber\none,one@x.com,111\ntwo,two@x.com,222\n"));
+
+        assertThat(outcomes(report), contains(BulkIngestRow.Outcome.CREATED, BulkIngestRow.Outcome.DUPLICATE));
+        assertThat(report.getRows().get(0).getRequestId(), equalTo(7L));
+    }
+
+    @Test
+    public void when_a_row_fails_for_another_reason_than_a_duplicate_expect_it_reported_invalid_with_the_cause() {
+
+        User user = createUser();
+        Mockito.when(activeRequestKeyService.findClaimed(any())).thenReturn(Collections.emptySet());
+        Mockito.when(testRequestService.createTestRequestsFrom(eq(user), anyList())).thenThrow(new DataIntegrityViolationException("Data too long for column 'name'"));
+        TestRequest created = new TestRequest();
+        created.setRequestId(7L);
+        Mockito.when(testRequestService.createTestRequestFrom(eq(user), any()))
+                .thenThrow(new DataIntegrityViolationException("Data too long for column 'name'"))
+                .thenThrow(new AppException("Invalid pin code"))
+                .thenReturn(created);
+
+        BulkIngestReport report = testRequestIngestService.ingestCsv(user, toStream("name,email,phoneNumber
+one,one@x.com,111
+two,two@x.com,222
+three,three@x.com,333
+"));
+
+        assertThat(outcomes(report), contains(BulkIngestRow.Outcome.INVALID, BulkIngestRow.Outcome.INVALID, BulkIngestRow.Outcome.CREATED));
+        assertThat(report.getRows().get(0).getMessage(), equalTo("Data too long for column 'name'"));
+        assertThat(report.getRows().get(1).getMessage(), equalTo("Invalid pin code"));
+    }
+
+    private List<TestRequest> withIds(List<CreateTestRequest> createTestRequests) {
+        long id = 1;
+        List<TestRequest> testRequests = new ArrayList<>();
+        for (CreateTestRequest createTestRequest : createTestRequests) {
+            TestRequest testRequest = new TestRequest();
+            testRequest.setRequestId(id++);
+            testRequest.setEmail(createTestRequest.getEmail());
+            testRequests.add(testRequest);
+        }
+        return testRequests;
+    }
+
+    private List<BulkIngestRow.Outcome> outcomes(BulkIngestReport report) {
+        return report.getRows().stream().map(BulkIngestRow::getOutcome).collect(Collectors.toList());
+    }
+
+    private InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private User createUser() {
+        User user = new User();
+        user.setId(1L);
+        user.setUserName("someuser");
+        return user;
+    }
+}
@@ -0,0 +1,182 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.Query;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.testrequests.archive.TestRequestArchive;
+import org.upgrad.upstac.testrequests.consultation.ConsultationRepository;
+import org.upgrad.upstac.testrequests.lab.LabResultRepository;
+import org.upgrad.upstac.testrequests.queue.ConsultationPriorityQueue;
+import org.upgrad.upstac.users.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestQueryServiceTest {
+
+    @Mock
+    TestRequestRepository testRequestRepository;
+
+    @Mock
+    TestRequestArchive testRequestArchive;
+
+    @Mock
+    ConsultationPriorityQueue consultationPriorityQueue;
+
+    @Mock
+    LabResultRepository labResultRepository;
+
+    @Mock
+    ConsultationRepository consultationRepository;
+
+    @InjectMocks
+    TestRequestQueryService testRequestQueryService;
+
+    @Test
+    public void when_more_rows_than_page_size_exist_expect_continuation_token_for_last_row() {
+
+        Mockito.when(testRequestRepository.findByStatusAndRequestIdGreaterThanOrderByRequestIdAsc(RequestStatus.INITIATED, 0L, PageRequest.of(0, 3)))
+                .thenReturn(getTestRequestsWithIds(1L, 2L, 3L));
+
+        TestRequestPage page = testRequestQueryService.findBy(RequestStatus.INITIATED, null, 2);
+
+        assertThat(page.getContent(), hasSize(2));
+        assertThat(TestRequestPage.fromContinuationToken(page.getContinuationToken()), is(equalTo(2L)));
+    }
+
+    @Test
+    public void when_continuation_token_is_passed_expect_next_page_to_start_after_it() {
+
+        String continuationToken = TestRequestPage.toContinuationToken(2L);
+        Mockito.when(testRequestRepository.findByStatusAndRequestIdGreaterThanOrderByRequestIdAsc(eq(RequestStatus.INITIATED), eq(2L), any()))
+                .thenReturn(getTestRequestsWithIds(3L));
+
+        TestRequestPage page = testRequestQueryService.findBy(RequestStatus.INITIATED, continuationToken, 2);
+
+        assertThat(page.getContent(), hasSize(1));
+        assertThat(page.getContinuationToken(), is(nullValue()));
+    }
+
+    @Test
+    public void when_some_of_the_history_is_archived_expect_one_page_merged_by_request_id() {
+
+        User user = new User();
+        user.setId(7L);
+        Mockito.when(testRequestRepository.findByCreatedByAndRequestIdGreaterThanOrderByRequestIdAsc(user, 0L, PageRequest.of(0, 3)))
+                .thenReturn(getTestRequestsWithIds(3L, 5L));
+        Mockito.when(testRequestArchive.findByCreatedBy(7L, 0L, 3))
+                .thenReturn(getTestRequestsWithIds(1L, 4L));
+
+        TestRequestPage page = testRequestQueryService.findByUser(user, null, 2);
+
+        assertThat(page.getContent(), hasSize(2));
+        assertThat(page.getContent().get(0).getRequestId(), is(equalTo(1L)));
+        assertThat(page.getContent().get(1).getRequestId(), is(equalTo(3L)));
+        assertThat(TestRequestPage.fromContinuationToken(page.getContinuationToken()), is(equalTo(3L)));
+    }
+
+    @Test
+    public void when_request_is_not_in_test_request_expect_it_from_the_archive() {
+
+        TestRequest archived = getTestRequestsWithIds(9L).get(0);
+        Mockito.when(testRequestRepository.findById(9L)).thenReturn(Optional.empty());
+        Mockito.when(testRequestArchive.findById(9L)).thenReturn(Optional.of(archived));
+
+        assertThat(testRequestQueryService.getTestRequestById(9L).get(), is(sameInstance(archived)));
+    }
+
+    @Test
+    public void when_page_size_is_above_cap_expect_it_to_be_capped() {
+
+        assertThat(TestRequestPage.pageSizeFrom(100000), is(equalTo(TestRequestPage.MAX_PAGE_SIZE)));
+        assertThat(TestRequestPage.pageSizeFrom(null), is(equalTo(TestRequestPage.DEFAULT_PAGE_SIZE)));
+    }
+
+    @Test
+    public void when_continuation_token_is_invalid_expect_app_exception() {
+
+        assertThrows(AppException.class, () -> testRequestQueryService.findBy(RequestStatus.INITIATED, "not a token!", 10));
+    }
+
+    @Test
+    public void when_priority_queue_has_stale_entries_expect_them_skipped_and_removed() {
+
+        List<TestRequest> rows = getTestRequestsWithIds(3L, 5L, 8L);
+        rows.forEach(testRequest -> testRequest.setStatus(RequestStatus.LAB_TEST_COMPLETED));
+        rows.get(1).setStatus(RequestStatus.DIAGNOSIS_IN_PROCESS);
+        Mockito.when(consultationPriorityQueue.top(TestRequestPage.DEFAULT_PAGE_SIZE)).thenReturn(Arrays.asList(8L, 5L, 3L, 2L));
+        Mockito.when(testRequestRepository.findAllWithDetailsByRequestIdIn(Arrays.asList(8L, 5L, 3L, 2L))).thenReturn(rows);
+
+        List<TestRequest> testRequests = testRequestQueryService.findForConsultationByPriority(null);
+
+        assertThat(testRequests.stream().map(TestRequest::getRequestId).collect(Collectors.toList()), contains(8L, 3L));
+        Mockito.verify(consultationPriorityQueue).removeAll(Arrays.asList(5L, 2L));
+    }
+
+    @Test
+    public void when_priority_queue_is_empty_expect_no_lookup() {
+
+        Mockito.when(consultationPriorityQueue.top(TestRequestPage.DEFAULT_PAGE_SIZE)).thenReturn(Collections.emptyList());
+
+        assertThat(testRequestQueryService.findForConsultationByPriority(null), is(empty()));
+        Mockito.verifyNoInteractions(testRequestRepository);
+    }
+
+    @Test
+    public void when_work_lists_are_read_expect_assigned_requests_from_one_query_each() {
+
+        User tester = new User();
+        User doctor = new User();
+        Mockito.when(testRequestRepository.findAllAssignedToTester(tester)).thenReturn(getTestRequestsWithIds(2L, 7L));
+        Mockito.when(testRequestRepository.findAllAssignedToDoctor(doctor)).thenReturn(getTestRequestsWithIds(3L));
+
+        List<TestRequest> testerRequests = testRequestQueryService.findByTester(tester);
+        List<TestRequest> doctorRequests = testRequestQueryService.findByDoctor(doctor);
+
+        assertThat(testerRequests.stream().map(TestRequest::getRequestId).collect(Collectors.toList()), contains(2L, 7L));
+        assertThat(doctorRequests.stream().map(TestRequest::getRequestId).collect(Collectors.toList()), contains(3L));
+        Mockito.verifyNoInteractions(labResultRepository, consultationRepository);
+    }
+
+    @Test
+    public void when_work_lists_join_fetch_roles_expect_one_row_per_assigned_request() throws Exception {
+
+        // the role joins multiply rows, distinct folds them back to one request per lab result or consultation as before
+        String testerQuery = TestRequestRepository.class.getMethod("findAllAssignedToTester", User.class).getAnnotation(Query.class).value();
+        String doctorQuery = TestRequestRepository.class.getMethod("findAllAssignedToDoctor", User.class).getAnnotation(Query.class).value();
+
+        assertThat(testerQuery, startsWith("select distinct t from TestRequest t"));
+        assertThat(testerQuery, containsString(" join fetch t.labResult l "));
+        assertThat(testerQuery, containsString("where l.tester = :tester"));
+        assertThat(doctorQuery, startsWith("select distinct t from TestRequest t"));
+        assertThat(doctorQuery, containsString(" join fetch t.consultation c "));
+        assertThat(doctorQuery, containsString("where c.doctor = :doctor"));
+    }
+
+    private List<TestRequest> getTestRequestsWithIds(Long... ids) {
+        List<TestRequest> testRequests = new ArrayList<>();
+        for (Long id : ids) {
+            TestRequest testRequest = new TestRequest();
+            testRequest.setRequestId(id);
+            testRequests.add(testRequest);
+        }
+        return testRequests;
+    }
+}
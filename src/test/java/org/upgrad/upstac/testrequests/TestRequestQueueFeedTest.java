@@ -0,0 +1,96 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueue;
+import org.upgrad.upstac.testrequests.queue.TestRequestQueueFeed;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+
+class TestRequestQueueFeedTest {
+
+    // the feed hands out these mocks in order instead of real emitters
+    Deque<SseEmitter> emitters = new ArrayDeque<>();
+
+    TestRequestQueueFeed testRequestQueueFeed = new TestRequestQueueFeed() {
+        @Override
+        protected SseEmitter createEmitter() {
+            return emitters.removeFirst();
+        }
+    };
+
+    @AfterEach
+    public void tearDown() {
+        testRequestQueueFeed.shutdown();
+    }
+
+    @Test
+    public void when_a_request_enters_a_queue_expect_only_its_subscribers_sent_a_delta() throws Exception {
+
+        SseEmitter labTester = Mockito.mock(SseEmitter.class);
+        SseEmitter doctor = Mockito.mock(SseEmitter.class);
+        emitters.addAll(Arrays.asList(labTester, doctor));
+        assertThat(testRequestQueueFeed.subscribe(TestRequestQueue.LAB_TEST), is(labTester));
+        testRequestQueueFeed.subscribe(TestRequestQueue.CONSULTATION);
+
+        testRequestQueueFeed.onStatusChanged(changed(null, RequestStatus.INITIATED));
+
+        Mockito.verify(labTester, Mockito.timeout(1000)).send(any(SseEmitter.SseEventBuilder.class));
+        Mockito.verify(doctor, Mockito.after(200).never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void when_a_subscription_completes_expect_no_more_deltas_sent_to_it() throws Exception {
+
+        SseEmitter labTester = Mockito.mock(SseEmitter.class);
+        emitters.add(labTester);
+        testRequestQueueFeed.subscribe(TestRequestQueue.LAB_TEST);
+        ArgumentCaptor<Runnable> onCompletion = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(labTester).onCompletion(onCompletion.capture());
+
+        onCompletion.getValue().run();
+        testRequestQueueFeed.onStatusChanged(changed(RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS));
+
+        Mockito.verify(labTester, Mockito.after(200).never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    public void when_a_subscriber_falls_behind_expect_it_dropped_without_holding_up_the_others() throws Exception {
+
+        SseEmitter slow = Mockito.mock(SseEmitter.class);
+        SseEmitter fast = Mockito.mock(SseEmitter.class);
+        CountDownLatch stuck = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            stuck.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(slow).send(any(SseEmitter.SseEventBuilder.class));
+        emitters.addAll(Arrays.asList(slow, fast));
+        testRequestQueueFeed.subscribe(TestRequestQueue.LAB_TEST);
+        testRequestQueueFeed.subscribe(TestRequestQueue.LAB_TEST);
+
+        int deltas = TestRequestQueueFeed.MAX_PENDING_DELTAS + 2;
+        for (int i = 0; i < deltas; i++)
+            testRequestQueueFeed.onStatusChanged(changed(null, RequestStatus.INITIATED));
+
+        Mockito.verify(fast, Mockito.timeout(2000).times(deltas)).send(any(SseEmitter.SseEventBuilder.class));
+        Mockito.verify(slow, Mockito.timeout(1000)).complete();
+        stuck.countDown();
+    }
+
+    private StatusChanged changed(RequestStatus from, RequestStatus to) {
+        return new StatusChanged(Collections.singletonList(1L), from, to, 1L);
+    }
+}
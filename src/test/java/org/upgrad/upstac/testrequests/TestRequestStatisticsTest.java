@@ -0,0 +1,72 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.upgrad.upstac.testrequests.archive.ArchivedTestRequestRepository;
+import org.upgrad.upstac.testrequests.consultation.ConsultationRepository;
+import org.upgrad.upstac.testrequests.consultation.DoctorSuggestion;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.lab.LabResultRepository;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.testrequests.statistics.TestRequestStatistics;
+import org.upgrad.upstac.testrequests.statistics.TestRequestStatisticsSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestStatisticsTest {
+
+    @Mock
+    TestRequestRepository testRequestRepository;
+
+    @Mock
+    LabResultRepository labResultRepository;
+
+    @Mock
+    ConsultationRepository consultationRepository;
+
+    @Mock
+    ArchivedTestRequestRepository archivedTestRequestRepository;
+
+    @InjectMocks
+    TestRequestStatistics testRequestStatistics;
+
+    @Test
+    public void when_seeded_and_transitions_recorded_expect_counters_to_follow() {
+
+        List<Object[]> statusCounts = new ArrayList<>();
+        statusCounts.add(new Object[]{RequestStatus.INITIATED, 5L});
+        statusCounts.add(new Object[]{RequestStatus.COMPLETED, 2L});
+        Mockito.when(testRequestRepository.countGroupByStatus()).thenReturn(statusCounts);
+        Mockito.when(labResultRepository.countGroupByResult()).thenReturn(Collections.singletonList(new Object[]{TestStatus.POSITIVE, 2L}));
+        Mockito.when(consultationRepository.countGroupBySuggestion()).thenReturn(Collections.emptyList());
+        Mockito.when(archivedTestRequestRepository.count()).thenReturn(3L);
+        Mockito.when(archivedTestRequestRepository.countGroupByResult()).thenReturn(Collections.singletonList(new Object[]{TestStatus.POSITIVE, 1L}));
+
+        testRequestStatistics.seed();
+        testRequestStatistics.onStatusChanged(new StatusChanged(Collections.singletonList(10L), null, RequestStatus.INITIATED, 1L));
+        testRequestStatistics.onStatusChanged(new StatusChanged(Arrays.asList(1L, 2L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 1L));
+        testRequestStatistics.recordLabResult(TestStatus.NEGATIVE);
+        testRequestStatistics.recordSuggestion(DoctorSuggestion.ADMIT);
+
+        TestRequestStatisticsSummary summary = testRequestStatistics.getSummary();
+
+        assertThat(summary.getByStatus().get(RequestStatus.INITIATED), is(equalTo(4L)));
+        assertThat(summary.getByStatus().get(RequestStatus.LAB_TEST_IN_PROGRESS), is(equalTo(2L)));
+        assertThat(summary.getByStatus().get(RequestStatus.COMPLETED), is(equalTo(5L)));
+        assertThat(summary.getByResult().get(TestStatus.POSITIVE), is(equalTo(3L)));
+        assertThat(summary.getByResult().get(TestStatus.NEGATIVE), is(equalTo(1L)));
+        assertThat(summary.getBySuggestion().get(DoctorSuggestion.ADMIT), is(equalTo(1L)));
+        assertThat(summary.getBySuggestion().get(DoctorSuggestion.NO_ISSUES), is(equalTo(0L)));
+    }
+}
@@ -0,0 +1,215 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.upgrad.upstac.exception.AppException;
+import org.upgrad.upstac.exception.ConflictException;
+import org.upgrad.upstac.testrequests.consultation.ConsultationService;
+import org.upgrad.upstac.testrequests.consultation.CreateConsultationRequest;
+import org.upgrad.upstac.testrequests.flow.TestRequestFlowService;
+import org.upgrad.upstac.testrequests.history.TestRequestHistoryService;
+import org.upgrad.upstac.testrequests.lab.CreateLabResult;
+import org.upgrad.upstac.testrequests.lab.LabResultService;
+import org.upgrad.upstac.testrequests.lab.TestStatus;
+import org.upgrad.upstac.testrequests.queue.ConsultationPriorityQueue;
+import org.upgrad.upstac.testrequests.statistics.TestRequestStatistics;
+import org.upgrad.upstac.users.User;
+
+import javax.transaction.Transactional;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class TestRequestUpdateServiceTest {
+
+    @Mock
+    TestRequestRepository testRequestRepository;
+
+    @Mock
+    TestRequestFlowService testRequestFlowService;
+
+    @Mock
+    LabResultService labResultService;
+
+    @Mock
+    ConsultationService consultationService;
+
+    @Mock
+    TestRequestStatistics testRequestStatistics;
+
+    @Mock
+    ActiveRequestKeyService activeRequestKeyService;
+
+    @Mock
+    TestRequestHistoryService testRequestHistoryService;
+
+    @Mock
+    ConsultationPriorityQueue consultationPriorityQueue;
+
+    @InjectMocks
+    TestRequestUpdateService testRequestUpdateService;
+
+    @Test
+    public void when_bulk_assigning_for_lab_test_expect_only_initiated_requests_to_be_assigned() {
+
+        User tester = createUser();
+        List<TestRequest> initiated = getTestRequestsWithIds(1L, 2L);
+        Mockito.when(testRequestRepository.findByRequestIdInAndStatus(anyCollection(), eq(RequestStatus.INITIATED))).thenReturn(initiated);
+        Mockito.when(testRequestRepository.updateStatusForAll(Arrays.asList(1L, 2L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(2);
+        Mockito.when(testRequestRepository.findAllWithDetailsByRequestIdIn(Arrays.asList(1L, 2L))).thenReturn(initiated);
+
+        BulkAssignmentResult result = testRequestUpdateService.assignForLabTest(Arrays.asList(1L, 2L, 3L), tester);
+
+        assertThat(result.getAssigned(), hasSize(2));
+        assertThat(result.getSkipped(), contains(3L));
+        Mockito.verify(labResultService).assignForLabTest(initiated, tester);
+        Mockito.verify(testRequestFlowService).log(initiated, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, tester);
+    }
+
+    @Test
+    public void when_bulk_status_update_misses_rows_expect_conflict_exception() {
+
+        User doctor = createUser();
+        Mockito.when(testRequestRepository.findByRequestIdInAndStatus(anyCollection(), eq(RequestStatus.LAB_TEST_COMPLETED))).thenReturn(getTestRequestsWithIds(1L, 2L));
+        Mockito.when(testRequestRepository.updateStatusForAll(any(), eq(RequestStatus.LAB_TEST_COMPLETED), eq(RequestStatus.DIAGNOSIS_IN_PROCESS))).thenReturn(1);
+
+        assertThrows(ConflictException.class, () -> testRequestUpdateService.assignForConsultation(Arrays.asList(1L, 2L), doctor));
+        Mockito.verifyNoInteractions(consultationService);
+    }
+
+    @Test
+    public void when_claiming_next_requests_expect_requests_lost_to_other_testers_to_be_passed_over() {
+
+        User tester = createUser();
+        Mockito.when(testRequestRepository.findIdsByStatusAfter(eq(RequestStatus.INITIATED), eq(0L), any()))
+                .thenReturn(Arrays.asList(1L, 2L, 3L, 4L));
+        Mockito.when(testRequestRepository.updateStatusIfCurrent(1L, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(0);
+        Mockito.when(testRequestRepository.updateStatusIfCurrent(2L, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(1);
+        Mockito.when(testRequestRepository.updateStatusIfCurrent(3L, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(1);
+        Mockito.when(testRequestRepository.findAllWithDetailsByRequestIdIn(Arrays.asList(2L, 3L))).thenReturn(getTestRequestsWithIds(2L, 3L));
+
+        BulkAssignmentResult result = testRequestUpdateService.claimNextForLabTest(2, tester);
+
+        assertThat(result.getAssigned(), hasSize(2));
+        assertThat(result.getSkipped(), is(empty()));
+        Mockito.verify(testRequestRepository, Mockito.never()).updateStatusIfCurrent(4L, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS);
+    }
+
+    @Test
+    public void when_a_whole_page_of_candidates_is_lost_expect_claiming_to_continue_past_it() {
+
+        User tester = createUser();
+        Mockito.when(testRequestRepository.findIdsByStatusAfter(eq(RequestStatus.INITIATED), eq(0L), any())).thenReturn(Arrays.asList(1L, 2L));
+        Mockito.when(testRequestRepository.findIdsByStatusAfter(eq(RequestStatus.INITIATED), eq(2L), any())).thenReturn(Collections.singletonList(3L));
+        Mockito.when(testRequestRepository.updateStatusIfCurrent(anyLong(), eq(RequestStatus.INITIATED), eq(RequestStatus.LAB_TEST_IN_PROGRESS))).thenReturn(0);
+        Mockito.when(testRequestRepository.updateStatusIfCurrent(3L, RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(1);
+        Mockito.when(testRequestRepository.findAllWithDetailsByRequestIdIn(Collections.singletonList(3L))).thenReturn(getTestRequestsWithIds(3L));
+
+        BulkAssignmentResult result = testRequestUpdateService.claimNextForLabTest(1, tester);
+
+        assertThat(result.getAssigned(), hasSize(1));
+        Mockito.verify(testRequestRepository, Mockito.never()).findByStatusAndRequestIdGreaterThanOrderByRequestIdAsc(any(), any(), any());
+    }
+
+    @Test
+    public void when_the_queue_is_empty_expect_nothing_claimed_or_loaded() {
+
+        Mockito.when(testRequestRepository.findIdsByStatusAfter(eq(RequestStatus.INITIATED), eq(0L), any())).thenReturn(Collections.emptyList());
+
+        BulkAssignmentResult result = testRequestUpdateService.claimNextForLabTest(2, createUser());
+
+        assertThat(result.getAssigned(), is(empty()));
+        Mockito.verify(testRequestRepository, Mockito.never()).findAllWithDetailsByRequestIdIn(any());
+        Mockito.verifyNoInteractions(labResultService);
+    }
+
+    @Test
+    public void when_bulk_assigning_with_too_many_ids_expect_app_exception() {
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= TestRequestUpdateService.MAX_BULK_ASSIGNMENT_SIZE + 1; id++)
+            ids.add(id);
+
+        assertThrows(AppException.class, () -> testRequestUpdateService.assignForLabTest(ids, createUser()));
+        assertThrows(AppException.class, () -> testRequestUpdateService.assignForLabTest(Collections.emptyList(), createUser()));
+    }
+
+    @Test
+    public void when_the_transition_flush_fails_expect_the_failure_to_propagate_so_the_result_row_rolls_back_with_it() {
+
+        User tester = createUser();
+        TestRequest testRequest = getTestRequestsWithIds(1L).get(0);
+        testRequest.setStatus(RequestStatus.LAB_TEST_IN_PROGRESS);
+        CreateLabResult createLabResult = new CreateLabResult();
+        createLabResult.setResult(TestStatus.POSITIVE);
+        Mockito.when(testRequestRepository.findByRequestIdAndStatus(1L, RequestStatus.LAB_TEST_IN_PROGRESS)).thenReturn(Optional.of(testRequest));
+        Mockito.doThrow(new OptimisticLockingFailureException("stale")).when(testRequestRepository).flush();
+
+        assertThrows(ConflictException.class, () -> testRequestUpdateService.updateLabTest(1L, createLabResult, tester));
+
+        // the result row is only changed in the persistence context, nothing is saved on its own before the flush
+        Mockito.verify(labResultService).updateLabTest(testRequest, createLabResult);
+        Mockito.verify(testRequestRepository, Mockito.never()).save(any());
+    }
+
+    @Test
+    public void when_checking_the_transitions_expect_each_to_run_in_one_transaction_the_result_rows_join() throws NoSuchMethodException {
+
+        Class<TestRequestUpdateService> service = TestRequestUpdateService.class;
+        List<Method> transitions = Arrays.asList(
+                service.getMethod("assignForLabTest", Long.class, User.class, Long.class),
+                service.getMethod("updateLabTest", Long.class, CreateLabResult.class, User.class, Long.class),
+                service.getMethod("assignForConsultation", Long.class, User.class, Long.class),
+                service.getMethod("updateConsultation", Long.class, CreateConsultationRequest.class, User.class, Long.class));
+        for (Method transition : transitions) {
+            Transactional transactional = transition.getAnnotation(Transactional.class);
+            assertThat(transition.getName(), transactional, is(notNullValue()));
+            assertThat(transition.getName(), transactional.value(), is(Transactional.TxType.REQUIRED));
+        }
+
+        List<Method> resultRowWrites = Arrays.asList(
+                LabResultService.class.getMethod("assignForLabTest", TestRequest.class, User.class),
+                LabResultService.class.getMethod("updateLabTest", TestRequest.class, CreateLabResult.class),
+                ConsultationService.class.getMethod("assignForConsultation", TestRequest.class, User.class),
+                ConsultationService.class.getMethod("updateConsultation", TestRequest.class, CreateConsultationRequest.class));
+        for (Method write : resultRowWrites) {
+            Transactional transactional = write.getAnnotation(Transactional.class);
+            if (transactional != null)
+                assertThat(write.getName(), transactional.value(), is(Transactional.TxType.REQUIRED));
+        }
+    }
+
+    private List<TestRequest> getTestRequestsWithIds(Long... ids) {
+        List<TestRequest> testRequests = new ArrayList<>();
+        for (Long id : ids) {
+            TestRequest testRequest = new TestRequest();
+            testRequest.setRequestId(id);
+            testRequests.add(testRequest);
+        }
+        return testRequests;
+    }
+
+    private User createUser() {
+        User user = new User();
+        user.setId(1L);
+        user.setUserName("someone");
+        return user;
+    }
+}
@@ -0,0 +1,80 @@
+package org.upgrad.upstac.testrequests;
+
+import org.junit.jupiter.api.Test;
+import org.upgrad.upstac.testrequests.events.StatusChanged;
+import org.upgrad.upstac.testrequests.turnaround.LatencyHistogram;
+import org.upgrad.upstac.testrequests.turnaround.TurnaroundAnalytics;
+import org.upgrad.upstac.testrequests.turnaround.TurnaroundDimension;
+import org.upgrad.upstac.testrequests.turnaround.TurnaroundPercentiles;
+import org.upgrad.upstac.testrequests.turnaround.TurnaroundStage;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TurnaroundAnalyticsTest {
+
+    TurnaroundAnalytics turnaroundAnalytics = new TurnaroundAnalytics();
+
+    @Test
+    public void when_durations_are_recorded_expect_percentiles_within_bucket_precision() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++)
+            histogram.record(millis * 1000);
+
+        TurnaroundPercentiles percentiles = histogram.getPercentiles();
+
+        assertThat(percentiles.getCount(), is(equalTo(1000L)));
+        assertThat((double) percentiles.getP50(), is(closeTo(500000, 500000 * 0.07)));
+        assertThat((double) percentiles.getP95(), is(closeTo(950000, 950000 * 0.07)));
+        assertThat((double) percentiles.getP99(), is(closeTo(990000, 990000 * 0.07)));
+        assertThat(new LatencyHistogram().getPercentiles().getP50(), is(nullValue()));
+    }
+
+    @Test
+    public void when_requests_move_through_stages_expect_durations_by_stage_pin_code_and_tester() {
+
+        Instant created = Instant.parse("2026-01-01T10:00:00Z");
+        TestRequest first = getTestRequest(1L, 560001);
+        TestRequest second = getTestRequest(2L, 560002);
+
+        StatusChanged creation = StatusChanged.created(Arrays.asList(first, second), 5L);
+        creation.setHappenedAt(created);
+        turnaroundAnalytics.onStatusChanged(creation);
+
+        turnaroundAnalytics.onStatusChanged(changed(Collections.singletonList(1L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 7L, created.plusMillis(20)));
+        turnaroundAnalytics.onStatusChanged(changed(Collections.singletonList(2L), RequestStatus.INITIATED, RequestStatus.LAB_TEST_IN_PROGRESS, 8L, created.plusMillis(10)));
+        turnaroundAnalytics.onStatusChanged(changed(Collections.singletonList(1L), RequestStatus.LAB_TEST_IN_PROGRESS, RequestStatus.LAB_TEST_COMPLETED, 7L, created.plusMillis(25)));
+
+        Map<TurnaroundStage, TurnaroundPercentiles> summary = turnaroundAnalytics.getSummary();
+        Map<TurnaroundStage, Map<Long, TurnaroundPercentiles>> byPinCode = turnaroundAnalytics.getSummary(TurnaroundDimension.PIN_CODE);
+        Map<TurnaroundStage, Map<Long, TurnaroundPercentiles>> byTester = turnaroundAnalytics.getSummary(TurnaroundDimension.TESTER);
+
+        assertThat(summary.get(TurnaroundStage.WAIT_FOR_TESTER).getCount(), is(equalTo(2L)));
+        assertThat(summary.get(TurnaroundStage.WAIT_FOR_TESTER).getP99(), is(equalTo(20L)));
+        assertThat(summary.get(TurnaroundStage.LAB_TEST).getP50(), is(equalTo(5L)));
+        assertThat(summary.get(TurnaroundStage.CONSULTATION).getCount(), is(equalTo(0L)));
+        assertThat(byPinCode.get(TurnaroundStage.WAIT_FOR_TESTER).get(560002L).getP50(), is(equalTo(10L)));
+        assertThat(byTester.get(TurnaroundStage.LAB_TEST).keySet(), contains(7L));
+        assertThat(turnaroundAnalytics.getSummary(TurnaroundDimension.DOCTOR).get(TurnaroundStage.LAB_TEST).entrySet(), is(empty()));
+    }
+
+    private StatusChanged changed(List<Long> requestIds, RequestStatus from, RequestStatus to, Long changedById, Instant happenedAt) {
+        StatusChanged event = new StatusChanged(requestIds, from, to, changedById);
+        event.setHappenedAt(happenedAt);
+        return event;
+    }
+
+    private TestRequest getTestRequest(Long id, Integer pinCode) {
+        TestRequest testRequest = new TestRequest();
+        testRequest.setRequestId(id);
+        testRequest.setPinCode(pinCode);
+        return testRequest;
+    }
+}
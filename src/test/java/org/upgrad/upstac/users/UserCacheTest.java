@@ -0,0 +1,32 @@
+package org.upgrad.upstac.users;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class UserCacheTest {
+
+    UserCache userCache = new UserCache(100, 600);
+
+    @Test
+    public void when_a_cached_user_is_changed_expect_other_lookups_unaffected() {
+
+        User user = new User();
+        user.setId(1L);
+        user.setUserName("tester");
+        user.setEmail("tester@upgrad.com");
+        userCache.put(user);
+        user.setEmail("changed-before-save@upgrad.com");
+
+        User first = userCache.findById(1L, Optional::empty).get();
+        first.setEmail("changed-by-first@upgrad.com");
+        User second = userCache.findByUserName("tester", () -> null);
+
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(second.getEmail(), is(equalTo("tester@upgrad.com")));
+        assertThat(userCache.findByEmail("tester@upgrad.com", () -> null).getId(), is(equalTo(1L)));
+    }
+}